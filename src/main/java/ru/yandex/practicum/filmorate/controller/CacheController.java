@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsProvider;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/caches")
+@RequiredArgsConstructor
+public class CacheController {
+    private static final Logger log = LoggerFactory.getLogger(CacheController.class);
+    private final List<CacheStatsProvider> caches;
+
+    @GetMapping
+    public List<CacheStats> getStats() {
+        log.info("Пришел GET запрос /caches");
+        List<CacheStats> stats = caches.stream()
+                .map(CacheStatsProvider::getStats)
+                .toList();
+        log.info("Отправлен ответ GET /caches с телом: {}", stats);
+        return stats;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -7,7 +8,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.service.PageCursor;
 import ru.yandex.practicum.filmorate.service.DirectorService;
 
 import java.util.Collection;
@@ -20,11 +23,22 @@ public class DirectorController {
     private final DirectorService directorService;
 
     @GetMapping
-    public Collection<Director> findAll() {
-        log.info("Пришел GET запрос /directors");
-        Collection<Director> allDirectors = directorService.findAll();
-        log.info("Отправлен ответ GET /directors с телом: {}", allDirectors);
-        return allDirectors;
+    public Collection<Director> findAll(@RequestParam(required = false) String cursor,
+                                        @RequestParam(required = false) Integer limit,
+                                        HttpServletResponse response) {
+        if (cursor == null && limit == null) {
+            log.info("Пришел GET запрос /directors");
+            Collection<Director> allDirectors = directorService.findAll();
+            log.info("Отправлен ответ GET /directors с телом: {}", allDirectors);
+            return allDirectors;
+        }
+        log.info("Пришел GET запрос /directors?cursor={}&limit={}", cursor, limit);
+        CursorPage<Director> page = directorService.findPage(cursor, PageCursor.limit(limit));
+        if (page.getNextCursor() != null) {
+            response.setHeader(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        log.info("Отправлен ответ GET /directors?cursor={}&limit={} с телом: {}", cursor, limit, page.getItems());
+        return page.getItems();
 
     }
 
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.service.FilmLikeImportService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+@RestController
+@RequestMapping("/films")
+@RequiredArgsConstructor
+public class FilmBulkController {
+    private static final Logger log = LoggerFactory.getLogger(FilmBulkController.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    private final FilmImportService filmImportService;
+    private final FilmLikeImportService filmLikeImportService;
+
+    @PostMapping(path = "/bulk", consumes = {NDJSON, CSV})
+    public void importFilms(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Пришел POST запрос /films/bulk с типом {}", request.getContentType());
+        String format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType(CSV))
+                ? FilmImportService.FORMAT_CSV
+                : FilmImportService.FORMAT_NDJSON;
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        int created = filmImportService.importFilms(reader, format, response.getWriter());
+        log.info("Отправлен ответ POST /films/bulk, создано фильмов: {}", created);
+    }
+
+    @PostMapping(path = "/likes/bulk", consumes = NDJSON)
+    public void importLikes(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Пришел POST запрос /films/likes/bulk");
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        int applied = filmLikeImportService.importLikes(reader, response.getWriter());
+        log.info("Отправлен ответ POST /films/likes/bulk, применено операций: {}", applied);
+    }
+}
@@ -1,31 +1,82 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.service.PageCursor;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Collection;
 
 @RestController
 @RequestMapping("/films")
-@RequiredArgsConstructor
 public class FilmController {
     private static final Logger log = LoggerFactory.getLogger(FilmController.class);
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final long exportTimeoutMillis;
+
+    public FilmController(FilmService filmService,
+                          ObjectMapper objectMapper,
+                          @Value("${filmorate.export.timeout:PT1H}") Duration exportTimeout) {
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.exportTimeoutMillis = exportTimeout.toMillis();
+    }
 
     @GetMapping
-    public Collection<Film> findAll() {
-        log.info("Пришел GET запрос /films");
-        Collection<Film> allFilms = filmService.findAll();
-        log.info("Отправлен ответ GET /films с телом: {}", allFilms);
-        return allFilms;
+    public Collection<Film> findAll(@RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) Integer limit,
+                                    HttpServletResponse response) {
+        if (cursor == null && limit == null) {
+            log.info("Пришел GET запрос /films");
+            Collection<Film> allFilms = filmService.findAll();
+            log.info("Отправлен ответ GET /films с телом: {}", allFilms);
+            return allFilms;
+        }
+        log.info("Пришел GET запрос /films?cursor={}&limit={}", cursor, limit);
+        CursorPage<Film> page = filmService.findPage(cursor, PageCursor.limit(limit));
+        if (page.getNextCursor() != null) {
+            response.setHeader(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        log.info("Отправлен ответ GET /films?cursor={}&limit={} с телом: {}", cursor, limit, page.getItems());
+        return page.getItems();
+    }
+
+    // the export runs on the async executor with its own timeout, other async requests keep the default one
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public WebAsyncTask<Void> export(HttpServletResponse response) {
+        log.info("Пришел GET запрос /films/export");
+        return new WebAsyncTask<>(exportTimeoutMillis, () -> {
+            response.setContentType("application/x-ndjson");
+            OutputStream out = response.getOutputStream();
+            long exported = filmService.exportFilms(film -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(film));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            log.info("Отправлен ответ GET /films/export, выгружено фильмов: {}", exported);
+            return null;
+        });
     }
 
     @GetMapping("/{filmId}")
@@ -101,6 +152,17 @@ public class FilmController {
         return commonFilms;
     }
 
+    @GetMapping("/{filmId}/similar")
+    public Collection<Film> getSimilar(@PathVariable Long filmId, @RequestParam(defaultValue = "10") Integer count) {
+        log.info("Пришел GET запрос /films/{}/similar?count={}", filmId, count);
+        if (count <= 0) {
+            throw new ConditionsNotMetException("Количество фильмов должно быть положительным");
+        }
+        Collection<Film> similarFilms = filmService.getSimilarFilms(filmId, count);
+        log.info("Отправлен ответ GET /films/{}/similar?count={} с телом: {}", filmId, count, similarFilms);
+        return similarFilms;
+    }
+
     @GetMapping("/director/{directorId}")
     public Collection<Film> getFilmsByDirector(@PathVariable Long directorId, @RequestParam String sortBy) {
         log.info("Пришел GET запрос /films/director/{}?sortBy={}", directorId, sortBy);
@@ -122,13 +184,25 @@ public class FilmController {
     }
 
     @GetMapping("/search")
-    public Collection<Film> search(@RequestParam String query, @RequestParam String by) {
-        log.info("Пришел GET запрос /films/search с query={} и by={}", query, by);
-        Collection<Film> filmsFound = filmService.search(query, by);
+    public Collection<Film> search(@RequestParam String query, @RequestParam String by,
+                                   @RequestParam(defaultValue = "false") boolean fuzzy) {
+        log.info("Пришел GET запрос /films/search с query={}, by={} и fuzzy={}", query, by, fuzzy);
+        Collection<Film> filmsFound = filmService.search(query, by, fuzzy);
         log.info("Отправлен ответ GET /films/search с телом: {}", filmsFound);
         return filmsFound;
     }
 
+    @GetMapping("/suggest")
+    public Collection<Suggestion> suggest(@RequestParam String prefix, @RequestParam(defaultValue = "10") Integer count) {
+        log.info("Пришел GET запрос /films/suggest?prefix={}&count={}", prefix, count);
+        if (count <= 0) {
+            throw new ConditionsNotMetException("Количество подсказок должно быть положительным");
+        }
+        Collection<Suggestion> suggestions = filmService.suggest(prefix, count);
+        log.info("Отправлен ответ GET /films/suggest?prefix={}&count={} с телом: {}", prefix, count, suggestions);
+        return suggestions;
+    }
+
     private void validate(final Film film) {
         if (film.getDescription().length() > 200) {
             log.debug("Фильм не прошел валидацию по причине: Максимальная длина описания — 200 символов");
@@ -1,12 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.service.PageCursor;
 import ru.yandex.practicum.filmorate.service.ReviewService;
 
 import java.util.Collection;
@@ -20,11 +23,16 @@ public class ReviewController {
 
     @GetMapping
     public Collection<Review> findByParameter(@RequestParam(required = false) Long filmId,
-                                              @RequestParam(defaultValue = "10") int count) {
-        log.info("Пришел GET запрос /reviews с параметрами: filmId={}, count={}", filmId, count);
-        Collection<Review> allReviews = reviewService.findByParameter(filmId, count);
-        log.info("Отправлен ответ GET /reviews с телом: {}", allReviews);
-        return allReviews;
+                                              @RequestParam(defaultValue = "10") int count,
+                                              @RequestParam(required = false) String cursor,
+                                              HttpServletResponse response) {
+        log.info("Пришел GET запрос /reviews с параметрами: filmId={}, count={}, cursor={}", filmId, count, cursor);
+        CursorPage<Review> page = reviewService.findPage(filmId, PageCursor.limit(count), cursor);
+        if (page.getNextCursor() != null) {
+            response.setHeader(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        log.info("Отправлен ответ GET /reviews с телом: {}", page.getItems());
+        return page.getItems();
     }
 
     @GetMapping("/{reviewId}")
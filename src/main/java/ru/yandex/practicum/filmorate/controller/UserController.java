@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -7,9 +8,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.PageCursor;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.time.LocalDate;
@@ -23,11 +26,22 @@ public class UserController {
     private final UserService userService;
 
     @GetMapping
-    public Collection<User> findAll() {
-        log.info("Пришел GET запрос /users");
-        Collection<User> allUsers = userService.findAll();
-        log.info("Отправлен ответ GET /users с телом: {}", allUsers);
-        return allUsers;
+    public Collection<User> findAll(@RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) Integer limit,
+                                    HttpServletResponse response) {
+        if (cursor == null && limit == null) {
+            log.info("Пришел GET запрос /users");
+            Collection<User> allUsers = userService.findAll();
+            log.info("Отправлен ответ GET /users с телом: {}", allUsers);
+            return allUsers;
+        }
+        log.info("Пришел GET запрос /users?cursor={}&limit={}", cursor, limit);
+        CursorPage<User> page = userService.findPage(cursor, PageCursor.limit(limit));
+        if (page.getNextCursor() != null) {
+            response.setHeader(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        log.info("Отправлен ответ GET /users?cursor={}&limit={} с телом: {}", cursor, limit, page.getItems());
+        return page.getItems();
     }
 
     @GetMapping("/{userId}")
@@ -169,6 +183,19 @@ public class UserController {
         return friends;
     }
 
+    @GetMapping("/{userId}/friends/count")
+    public int countUserFriends(@PathVariable Long userId) {
+        log.info("Пришел GET запрос /users/{}/friends/count", userId);
+        final User user = userService.findById(userId);
+        if (user == null) {
+            log.info("Запрос GET /users/{}/friends/count обработан не был по причине: Пользователь с id = {} не найден", userId, userId);
+            throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
+        }
+        int count = userService.countFriends(user);
+        log.info("Отправлен ответ GET /users/{}/friends/count с телом: {}", userId, count);
+        return count;
+    }
+
     private void validate(final User user) {
         if (user.getLogin().contains(" ")) {
             log.debug("Пользователь не прошел валидацию по причине: Логин не может содержать пробелы");
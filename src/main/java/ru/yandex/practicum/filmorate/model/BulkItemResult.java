@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResult {
+    private long line;
+
+    private Long id;
+
+    private Status status;
+
+    private String error;
+
+    public static BulkItemResult ok(long line, Long id) {
+        return new BulkItemResult(line, id, Status.OK, null);
+    }
+
+    public static BulkItemResult failed(long line, Long id, String error) {
+        return new BulkItemResult(line, id, Status.FAILED, error);
+    }
+
+    public enum Status {
+        OK,
+        FAILED
+    }
+}
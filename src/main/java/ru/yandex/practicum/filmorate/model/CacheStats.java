@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+public class CacheStats {
+    private String name;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long size;
+
+    private long maxSize;
+
+    private long memoryBytes;
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
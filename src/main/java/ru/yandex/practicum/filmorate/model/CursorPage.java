@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+
+    // null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+public class ExportedFilm {
+    @JsonUnwrapped
+    private Film film;
+
+    private long likes;
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import jakarta.validation.constraints.NotNull;
+import ru.yandex.practicum.filmorate.model.types.Operation;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+public class LikeOperation {
+    @NotNull
+    private Long filmId;
+
+    @NotNull
+    private Long userId;
+
+    private Operation op = Operation.ADD;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.model.types.SuggestionType;
+
+@lombok.Data
+@lombok.AllArgsConstructor
+@lombok.RequiredArgsConstructor
+public class Suggestion {
+    private SuggestionType type;
+
+    private Long id;
+
+    private String name;
+}
@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.model.types;
+
+public enum SuggestionType {
+    FILM,
+    DIRECTOR
+}
@@ -1,44 +1,91 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorCache;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 
 import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class DirectorService {
     private final DirectorStorage directorStorage;
+    private final DirectorCache directorCache;
 
-    public DirectorService(@Qualifier("directorDbStorage") DirectorStorage directorStorage) {
+    public DirectorService(@Qualifier("directorDbStorage") DirectorStorage directorStorage,
+                           DirectorCache directorCache) {
         this.directorStorage = directorStorage;
+        this.directorCache = directorCache;
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        if (directorCache.isEmpty()) {
+            findAll();
+        }
     }
 
     public Collection<Director> findAll() {
-        return directorStorage.findAll();
+        if (directorCache.isComplete()) {
+            return directorCache.getAll();
+        }
+        Collection<Director> directors = directorStorage.findAll();
+        directorCache.putAll(directors);
+        return directors;
+    }
+
+    public CursorPage<Director> findPage(String cursor, int limit) {
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor, 1)[0];
+        return PageCursor.page(directorStorage.findPage(afterId, limit + 1), limit, director -> new long[]{director.getId()});
     }
 
     public Director findById(Long directorId) {
-        return directorStorage.findById(directorId);
+        Director director = directorCache.get(directorId);
+        if (director != null) {
+            return director;
+        }
+        if (directorCache.isComplete()) {
+            throw new NotFoundException("Режиссер с id = " + directorId + " не найден.");
+        }
+        director = directorStorage.findById(directorId);
+        directorCache.put(director);
+        return director;
     }
 
     public Director create(Director director) {
         directorStorage.create(director);
+        directorCache.put(director);
         return findById(director.getId());
     }
 
     public Director update(Director director) {
         directorStorage.update(director);
+        directorCache.put(director);
         return findById(director.getId());
     }
 
     public Director delete(Director director) {
         directorStorage.delete(director);
+        directorCache.evict(director.getId());
         return director;
     }
 
+    public Set<Long> findExistingIds(Collection<Long> directorIds) {
+        if (directorCache.isComplete()) {
+            return directorIds.stream()
+                    .filter(id -> directorCache.get(id) != null)
+                    .collect(Collectors.toSet());
+        }
+        return directorStorage.findExistingIds(directorIds);
+    }
+
     public void loadDirectors(Collection<Film> films) {
         directorStorage.loadDirectors(films);
     }
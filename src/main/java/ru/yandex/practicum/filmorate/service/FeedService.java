@@ -32,6 +32,12 @@ public class FeedService {
         return event;
     }
 
+    public void createAll(Collection<Event> events) {
+        if (!events.isEmpty()) {
+            feedStorage.createAll(events);
+        }
+    }
+
     public Collection<Event> getUserFeed(User user) {
         return feedStorage.getUserFeed(user);
     }
@@ -0,0 +1,353 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.model.BulkItemResult;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+public class FilmImportService {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+    private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
+    // a description is at most 200 characters, so a quoted value spanning more lines can only be an unclosed quote
+    private static final int MAX_CSV_CONTINUATION_LINES = 200;
+
+    private final FilmStorage filmStorage;
+    private final GenreService genreService;
+    private final MpaService mpaService;
+    private final DirectorService directorService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PlatformTransactionManager transactionManager;
+    private final int batchSize;
+    private final int commitInterval;
+
+    public FilmImportService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                             GenreService genreService,
+                             MpaService mpaService,
+                             DirectorService directorService,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${filmorate.import.batch-size:500}") int batchSize,
+                             @Value("${filmorate.import.commit-interval:10}") int commitInterval) {
+        this.filmStorage = filmStorage;
+        this.genreService = genreService;
+        this.mpaService = mpaService;
+        this.directorService = directorService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.transactionManager = transactionManager;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    public int importFilms(BufferedReader reader, String format, Writer out) throws IOException {
+        if (!FORMAT_NDJSON.equals(format) && !FORMAT_CSV.equals(format)) {
+            throw new ConditionsNotMetException("Формат " + format + " не поддерживается.");
+        }
+        Import films = new Import(out);
+        String[] csvHeader = null;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            long recordLine = lineNumber;
+            if (FORMAT_CSV.equals(format)) {
+                // a quoted value may span several lines, the record is reported under its first line. The quote state
+                // is carried from line to line, and a record whose quote is not closed in time is failed alone
+                StringBuilder record = new StringBuilder(line);
+                boolean quoted = isQuoteOpen(line, false);
+                int continuationLines = 0;
+                String next;
+                while (quoted && continuationLines < MAX_CSV_CONTINUATION_LINES && (next = reader.readLine()) != null) {
+                    lineNumber++;
+                    continuationLines++;
+                    record.append('\n').append(next);
+                    quoted = isQuoteOpen(next, quoted);
+                }
+                if (quoted) {
+                    films.fail(recordLine, "Кавычка не закрыта в пределах " + MAX_CSV_CONTINUATION_LINES + " строк.");
+                    continue;
+                }
+                line = record.toString();
+                if (csvHeader == null) {
+                    csvHeader = parseCsvLine(line).toArray(String[]::new);
+                    continue;
+                }
+            }
+            try {
+                Film film = FORMAT_CSV.equals(format) ? parseCsvFilm(csvHeader, line) : objectMapper.readValue(line, Film.class);
+                validate(film);
+                films.add(recordLine, film);
+            } catch (Exception e) {
+                films.fail(recordLine, e.getMessage());
+            }
+        }
+        films.finish();
+        return films.created;
+    }
+
+    private void validate(Film film) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            throw new ConditionsNotMetException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining("; ")));
+        }
+        if (film.getDescription() != null && film.getDescription().length() > 200) {
+            throw new ConditionsNotMetException("Максимальная длина описания — 200 символов");
+        }
+        if (film.getReleaseDate().isBefore(MIN_RELEASE_DATE)) {
+            throw new ConditionsNotMetException("Дата релиза — не раньше 28 декабря 1895 года");
+        }
+    }
+
+    private Film parseCsvFilm(String[] header, String line) {
+        List<String> values = parseCsvLine(line);
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            row.put(header[i].trim(), values.get(i));
+        }
+
+        Film film = new Film();
+        film.setName(row.get("name"));
+        film.setDescription(row.get("description"));
+        film.setReleaseDate(LocalDate.parse(row.get("releaseDate")));
+        film.setDuration(Integer.parseInt(row.get("duration")));
+        if (row.get("mpa") != null && !row.get("mpa").isBlank()) {
+            film.setMpa(new Mpa(Integer.parseInt(row.get("mpa")), null));
+        }
+        for (String genreId : splitIds(row.get("genres"))) {
+            film.addGenre(new Genre(Integer.parseInt(genreId), null));
+        }
+        for (String directorId : splitIds(row.get("directors"))) {
+            film.addDirector(new Director(Long.parseLong(directorId), null));
+        }
+        return film;
+    }
+
+    private List<String> splitIds(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(";"))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .toList();
+    }
+
+    // returns whether a quote is open after the line, given whether one was open before it
+    private boolean isQuoteOpen(String line, boolean quoted) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+        }
+        return quoted;
+    }
+
+    private List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    // Failed lines are written as soon as batchSize of them are collected, created films are held back until the
+    // transaction that inserted them commits. Each batch runs in a nested transaction (a savepoint), so a batch
+    // that fails is rolled back alone and the batches before it stay in the transaction.
+    private class Import {
+        private final Writer out;
+        private final Set<Integer> mpaIds;
+        private final Set<Integer> genreIds;
+        private final List<Long> lines = new ArrayList<>();
+        private final List<Film> batch = new ArrayList<>();
+        private final List<BulkItemResult> failed = new ArrayList<>();
+        private final List<BulkItemResult> uncommitted = new ArrayList<>();
+        private TransactionStatus transaction;
+        private int batchesInTransaction = 0;
+        private int created = 0;
+
+        Import(Writer out) {
+            this.out = out;
+            this.mpaIds = mpaService.findAll().stream()
+                    .map(Mpa::getId)
+                    .collect(Collectors.toSet());
+            this.genreIds = genreService.findAll().stream()
+                    .map(Genre::getId)
+                    .collect(Collectors.toSet());
+        }
+
+        void add(long line, Film film) {
+            if (film.getMpa() != null && !mpaIds.contains(film.getMpa().getId())) {
+                fail(line, "Рейтинг с id = " + film.getMpa().getId() + " не найден.");
+                return;
+            }
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    if (!genreIds.contains(genre.getId())) {
+                        fail(line, "Жанр с id = " + genre.getId() + " не найден.");
+                        return;
+                    }
+                }
+            }
+            lines.add(line);
+            batch.add(film);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void fail(long line, String error) {
+            failed.add(BulkItemResult.failed(line, null, error));
+            if (failed.size() >= batchSize) {
+                write(failed);
+            }
+        }
+
+        void finish() {
+            flush();
+            commit();
+            write(failed);
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            Set<Long> directorIds = batch.stream()
+                    .filter(film -> film.getDirectors() != null)
+                    .flatMap(film -> film.getDirectors().stream())
+                    .map(Director::getId)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            Set<Long> existingDirectorIds = directorService.findExistingIds(directorIds);
+
+            List<Film> films = new ArrayList<>();
+            List<Long> filmLines = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Film film = batch.get(i);
+                Long missingDirectorId = film.getDirectors() == null ? null : film.getDirectors().stream()
+                        .map(Director::getId)
+                        .filter(id -> !existingDirectorIds.contains(id))
+                        .findFirst()
+                        .orElse(null);
+                if (missingDirectorId != null) {
+                    fail(lines.get(i), "Режиссер с id = " + missingDirectorId + " не найден.");
+                } else {
+                    films.add(film);
+                    filmLines.add(lines.get(i));
+                }
+            }
+            batch.clear();
+            lines.clear();
+            if (films.isEmpty()) {
+                return;
+            }
+
+            if (transaction == null) {
+                transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            }
+            TransactionStatus savepoint = transactionManager.getTransaction(
+                    new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_NESTED));
+            try {
+                filmStorage.createAll(films);
+                transactionManager.commit(savepoint);
+            } catch (RuntimeException e) {
+                transactionManager.rollback(savepoint);
+                filmLines.forEach(line -> fail(line, e.getMessage()));
+                return;
+            }
+            for (int i = 0; i < films.size(); i++) {
+                uncommitted.add(BulkItemResult.ok(filmLines.get(i), films.get(i).getId()));
+            }
+            if (++batchesInTransaction >= commitInterval) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            if (transaction != null) {
+                TransactionStatus status = transaction;
+                transaction = null;
+                batchesInTransaction = 0;
+                try {
+                    transactionManager.commit(status);
+                } catch (RuntimeException e) {
+                    uncommitted.replaceAll(result -> BulkItemResult.failed(result.getLine(), null, e.getMessage()));
+                }
+            }
+            created += (int) uncommitted.stream()
+                    .filter(result -> result.getStatus() == BulkItemResult.Status.OK)
+                    .count();
+            write(uncommitted);
+        }
+
+        private void write(List<BulkItemResult> results) {
+            results.sort(Comparator.comparingLong(BulkItemResult::getLine));
+            try {
+                for (BulkItemResult result : results) {
+                    out.write(objectMapper.writeValueAsString(result));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            results.clear();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+@Service
+public class FilmLikeBufferFlusher {
+    private static final Logger log = LoggerFactory.getLogger(FilmLikeBufferFlusher.class);
+    private final FilmStorage filmStorage;
+
+    public FilmLikeBufferFlusher(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.write-behind.poll-interval:PT0.1S}")
+    public synchronized int flush() {
+        return flush(false);
+    }
+
+    @PreDestroy
+    public synchronized int flushAll() {
+        int flushed = flush(true);
+        log.info("При остановке записано {} отложенных лайков", flushed);
+        return flushed;
+    }
+
+    private int flush(boolean force) {
+        int flushed = 0;
+        try {
+            int batch;
+            while (filmStorage.hasLikesToFlush(force) && (batch = filmStorage.flushBufferedLikes(force)) > 0) {
+                flushed += batch;
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать отложенные лайки, они останутся в буфере", e);
+        }
+        if (flushed > 0) {
+            log.debug("Записано {} отложенных лайков", flushed);
+        }
+        return flushed;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+@Service
+public class FilmLikeCountReconciler {
+    private static final Logger log = LoggerFactory.getLogger(FilmLikeCountReconciler.class);
+    private final FilmStorage filmStorage;
+
+    public FilmLikeCountReconciler(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.likes.reconcile-interval:PT1H}")
+    public int reconcile() {
+        int drift = filmStorage.reconcileLikeCounts();
+        if (drift > 0) {
+            log.warn("Счетчики лайков расходились с film_like у {} фильмов и были пересобраны", drift);
+        } else {
+            log.debug("Счетчики лайков совпадают с film_like");
+        }
+        return drift;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.model.BulkItemResult;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.types.EventType;
+import ru.yandex.practicum.filmorate.model.types.Operation;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+public class FilmLikeImportService {
+    private final FilmStorage filmStorage;
+    private final UserService userService;
+    private final FeedService feedService;
+    private final FilmRecommendationService recommendationService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public FilmLikeImportService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                 UserService userService,
+                                 FeedService feedService,
+                                 FilmRecommendationService recommendationService,
+                                 ObjectMapper objectMapper,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${filmorate.import.batch-size:500}") int batchSize) {
+        this.filmStorage = filmStorage;
+        this.userService = userService;
+        this.feedService = feedService;
+        this.recommendationService = recommendationService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    public int importLikes(BufferedReader reader, Writer out) throws IOException {
+        final List<Long> lines = new ArrayList<>();
+        final List<LikeOperation> batch = new ArrayList<>();
+        final List<BulkItemResult> results = new ArrayList<>();
+        int applied = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                LikeOperation operation = objectMapper.readValue(line, LikeOperation.class);
+                validate(operation);
+                lines.add(lineNumber);
+                batch.add(operation);
+            } catch (Exception e) {
+                results.add(BulkItemResult.failed(lineNumber, null, e.getMessage()));
+            }
+            if (batch.size() >= batchSize) {
+                applied += flush(lines, batch, results);
+            }
+            if (results.size() >= batchSize) {
+                write(results, out);
+            }
+        }
+        applied += flush(lines, batch, results);
+        write(results, out);
+        return applied;
+    }
+
+    private void validate(LikeOperation operation) {
+        if (operation.getFilmId() == null || operation.getUserId() == null) {
+            throw new ConditionsNotMetException("Должны быть указаны filmId и userId");
+        }
+        if (operation.getOp() != Operation.ADD && operation.getOp() != Operation.REMOVE) {
+            throw new ConditionsNotMetException("Операция " + operation.getOp() + " не поддерживается.");
+        }
+    }
+
+    private int flush(List<Long> lines, List<LikeOperation> batch, List<BulkItemResult> results) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        final List<LikeOperation> operations = new ArrayList<>();
+        final List<Long> operationLines = new ArrayList<>();
+        final List<BulkItemResult> missing = new ArrayList<>();
+        final List<LikeOperation> changed = new ArrayList<>();
+        try {
+            // the existence checks run in the transaction that writes the likes
+            transactionTemplate.executeWithoutResult(status -> {
+                final Set<Long> existingFilmIds = filmStorage.findExistingIds(batch.stream()
+                        .map(LikeOperation::getFilmId)
+                        .collect(Collectors.toSet()));
+                final Set<Long> existingUserIds = userService.findExistingIds(batch.stream()
+                        .map(LikeOperation::getUserId)
+                        .collect(Collectors.toSet()));
+
+                final long timestamp = Instant.now().toEpochMilli();
+                final List<Event> events = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    LikeOperation operation = batch.get(i);
+                    if (!existingFilmIds.contains(operation.getFilmId())) {
+                        missing.add(BulkItemResult.failed(lines.get(i), null,
+                                "Фильм с id = " + operation.getFilmId() + " не найден."));
+                    } else if (!existingUserIds.contains(operation.getUserId())) {
+                        missing.add(BulkItemResult.failed(lines.get(i), null,
+                                "Пользователь с id = " + operation.getUserId() + " не найден."));
+                    } else {
+                        operations.add(operation);
+                        operationLines.add(lines.get(i));
+                        events.add(new Event(null, operation.getUserId(), operation.getFilmId(),
+                                EventType.LIKE, operation.getOp(), timestamp));
+                    }
+                }
+                changed.addAll(filmStorage.applyLikes(operations));
+                feedService.createAll(events);
+            });
+        } catch (RuntimeException e) {
+            lines.forEach(line -> results.add(BulkItemResult.failed(line, null, e.getMessage())));
+            return 0;
+        } finally {
+            lines.clear();
+            batch.clear();
+        }
+        results.addAll(missing);
+        for (int i = 0; i < operations.size(); i++) {
+            results.add(BulkItemResult.ok(operationLines.get(i), operations.get(i).getFilmId()));
+        }
+        changed.forEach(operation -> recommendationService.likeChanged(operation.getFilmId(), operation.getUserId()));
+        return operations.size();
+    }
+
+    private void write(List<BulkItemResult> results, Writer out) throws IOException {
+        results.sort(Comparator.comparingLong(BulkItemResult::getLine));
+        for (BulkItemResult result : results) {
+            out.write(objectMapper.writeValueAsString(result));
+            out.write('\n');
+        }
+        out.flush();
+        results.clear();
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+@Service
+public class FilmRecommendationRefresher {
+    private static final Logger log = LoggerFactory.getLogger(FilmRecommendationRefresher.class);
+    private final FilmStorage filmStorage;
+    private final FilmRecommendationService recommendationService;
+
+    public FilmRecommendationRefresher(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                       FilmRecommendationService recommendationService) {
+        this.filmStorage = filmStorage;
+        this.recommendationService = recommendationService;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${filmorate.recommendations.rebuild-interval:PT1M}")
+    public boolean refresh() {
+        long started = System.currentTimeMillis();
+        boolean rebuilt = filmStorage.rebuildRecommendations();
+        if (rebuilt) {
+            recommendationService.recommendationsRebuilt();
+            log.info("Матрица рекомендаций пересобрана за {} мс", System.currentTimeMillis() - started);
+        }
+        return rebuilt;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.recommendation.RecommendationCache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves recommendations from RecommendationCache. An entry older than max-age is recomputed before answering,
+// one that is stale or older than refresh-ahead is answered as is and recomputed in the background. Users that
+// asked within active-window are also refreshed ahead of their next request by the scheduled precompute.
+@Service
+public class FilmRecommendationService {
+    private static final Logger log = LoggerFactory.getLogger(FilmRecommendationService.class);
+    private final FilmStorage filmStorage;
+    private final RecommendationCache cache;
+    private final long maxAgeMillis;
+    private final long refreshAheadMillis;
+    private final long activeWindowMillis;
+    private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recommendation-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FilmRecommendationService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                     RecommendationCache cache,
+                                     @Value("${filmorate.cache.recommendations.max-age:PT10M}") Duration maxAge,
+                                     @Value("${filmorate.cache.recommendations.refresh-ahead:PT5M}") Duration refreshAhead,
+                                     @Value("${filmorate.cache.recommendations.active-window:PT1H}") Duration activeWindow) {
+        this.filmStorage = filmStorage;
+        this.cache = cache;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.refreshAheadMillis = refreshAhead.toMillis();
+        this.activeWindowMillis = activeWindow.toMillis();
+    }
+
+    public List<Film> getRecommendations(Long userId) {
+        final long now = System.currentTimeMillis();
+        final RecommendationCache.Entry entry = cache.get(userId, now);
+        final List<Long> filmIds;
+        if (entry == null || now - entry.getComputedAt() > maxAgeMillis) {
+            filmIds = compute(userId);
+        } else {
+            if (entry.isStale() || now - entry.getComputedAt() > refreshAheadMillis) {
+                refreshAsync(userId);
+            }
+            filmIds = entry.getFilmIds();
+        }
+        return filmStorage.findByIds(filmIds);
+    }
+
+    // the user's own list is dropped, lists of users around the film are refreshed in the background
+    public void likeChanged(Long filmId, Long userId) {
+        cache.evict(userId);
+        cache.invalidateFilm(filmId);
+    }
+
+    public void recommendationsRebuilt() {
+        cache.invalidateAll();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.cache.recommendations.precompute-interval:PT10S}")
+    public int precompute() {
+        final long now = System.currentTimeMillis();
+        final List<Long> userIds = cache.findRefreshCandidates(now - activeWindowMillis, now - refreshAheadMillis);
+        int refreshed = 0;
+        for (Long userId : userIds) {
+            if (refreshing.add(userId)) {
+                try {
+                    compute(userId);
+                    refreshed++;
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось обновить рекомендации пользователя {}", userId, e);
+                } finally {
+                    refreshing.remove(userId);
+                }
+            }
+        }
+        if (refreshed > 0) {
+            log.debug("Заранее обновлены рекомендации {} пользователей", refreshed);
+        }
+        return refreshed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private List<Long> compute(Long userId) {
+        final long version = cache.version(userId);
+        try {
+            final long computedAt = System.currentTimeMillis();
+            final Set<Long> likedFilmIds = filmStorage.getLikedFilmIds(userId);
+            final List<Long> filmIds = filmStorage.getRecommendedFilmIds(userId);
+            cache.put(userId, filmIds, likedFilmIds, computedAt, version);
+            return filmIds;
+        } finally {
+            cache.release(userId, version);
+        }
+    }
+
+    private void refreshAsync(Long userId) {
+        if (!refreshing.add(userId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                compute(userId);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось обновить рекомендации пользователя {}", userId, e);
+            } finally {
+                refreshing.remove(userId);
+            }
+        });
+    }
+}
@@ -4,20 +4,25 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.DatabaseException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.ExportedFilm;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.types.EventType;
 import ru.yandex.practicum.filmorate.model.types.Operation;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 public class FilmService {
     private static final String SEARCH_BY_TITLE = "title";
     private static final String SEARCH_BY_DIRECTOR = "director";
+    private static final String SEARCH_BY_DESCRIPTION = "description";
 
     private final FilmStorage filmStorage;
     private final UserService userService;
@@ -25,28 +30,33 @@ public class FilmService {
     private final MpaService mpaService;
     private final DirectorService directorService;
     private final FeedService feedService;
+    private final FilmRecommendationService recommendationService;
 
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, UserService userService, GenreService genreService, MpaService mpaService, DirectorService directorService, FeedService feedService) {
+    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, UserService userService, GenreService genreService, MpaService mpaService, DirectorService directorService, FeedService feedService, FilmRecommendationService recommendationService) {
         this.filmStorage = filmStorage;
         this.userService = userService;
         this.genreService = genreService;
         this.mpaService = mpaService;
         this.directorService = directorService;
         this.feedService = feedService;
+        this.recommendationService = recommendationService;
     }
 
     public Collection<Film> findAll() {
-        Collection<Film> films = filmStorage.findAll();
-        genreService.loadGenres(films);
-        directorService.loadDirectors(films);
-        return films;
+        return filmStorage.findAll();
+    }
+
+    public long exportFilms(Consumer<ExportedFilm> consumer) {
+        return filmStorage.exportFilms(consumer);
+    }
+
+    public CursorPage<Film> findPage(String cursor, int limit) {
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor, 1)[0];
+        return PageCursor.page(filmStorage.findPage(afterId, limit + 1), limit, film -> new long[]{film.getId()});
     }
 
     public Film findById(Long filmId) {
-        Film film = filmStorage.findById(filmId);
-        genreService.loadGenres(Collections.singletonList(film));
-        directorService.loadDirectors(Collections.singletonList(film));
-        return film;
+        return filmStorage.findById(filmId);
     }
 
     public Film create(Film film) {
@@ -118,7 +128,9 @@ public class FilmService {
         if (user == null) {
             throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
         }
-        filmStorage.addLike(film, user);
+        if (filmStorage.addLike(film, user)) {
+            recommendationService.likeChanged(filmId, userId);
+        }
         feedService.create(userId, filmId, EventType.LIKE, Operation.ADD);
 
         return film;
@@ -133,17 +145,16 @@ public class FilmService {
         if (user == null) {
             throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
         }
-        filmStorage.deleteLike(film, user);
+        if (filmStorage.deleteLike(film, user)) {
+            recommendationService.likeChanged(filmId, userId);
+        }
         feedService.create(userId, filmId, EventType.LIKE, Operation.REMOVE);
 
         return film;
     }
 
     public List<Film> getTopFilmsByLike(Long count, Integer genreId, Integer year) {
-        List<Film> films = filmStorage.getTopFilmsByLike(count, genreId, year);
-        genreService.loadGenres(films);
-        directorService.loadDirectors(films);
-        return films;
+        return filmStorage.getTopFilmsByLike(count, genreId, year);
     }
 
     public List<Film> getCommonUserFilms(Long userId, Long otherUserId) {
@@ -153,64 +164,40 @@ public class FilmService {
         if (userService.findById(otherUserId) == null) {
             throw new NotFoundException("Пользователь с id = " + otherUserId + " не найден.");
         }
-        List<Film> films = filmStorage.getCommonUserFilms(userId, otherUserId);
-        genreService.loadGenres(films);
-        directorService.loadDirectors(films);
-        return films;
+        return filmStorage.getCommonUserFilms(userId, otherUserId);
+    }
+
+    public List<Film> getSimilarFilms(Long filmId, int count) {
+        filmStorage.findById(filmId);
+        return filmStorage.getSimilarFilms(filmId, count);
+    }
+
+    public List<Suggestion> suggest(String prefix, int count) {
+        return filmStorage.suggest(prefix, count);
     }
 
     public List<Film> getByDirector(Long directorId, String sortType) {
         directorService.findById(directorId);
-        List<Film> films = filmStorage.getByDirector(directorId);
-        genreService.loadGenres(films);
-        directorService.loadDirectors(films);
-        filmStorage.loadLikes(films);
-        films.sort(new Comparator<Film>() {
-            @Override
-            public int compare(Film film, Film otherFilm) {
-                if (sortType.equals("year")) {
-                    return Integer.compare(film.getReleaseDate().getYear(), otherFilm.getReleaseDate().getYear());
-                }
-                if (sortType.equals("likes")) {
-                    return -Long.compare(film.getLikedUsers().size(), otherFilm.getLikedUsers().size());
-                }
-                return 0;
-            }
-        });
-        return films;
+        return filmStorage.getByDirector(directorId, sortType);
     }
 
     public void delete(Film film) {
         filmStorage.delete(film);
     }
 
-    public Collection<Film> search(String query, String by) {
-        String[] searchFields = by.split(",");
-        Set<Film> resultFilms = new LinkedHashSet<>();
-
-        if (Arrays.asList(searchFields).contains(SEARCH_BY_TITLE)) {
-            resultFilms.addAll(filmStorage.searchFilmsByTitle(query));
+    public Collection<Film> search(String query, String by, boolean fuzzy) {
+        List<String> searchFields = Arrays.asList(by.split(","));
+        boolean byTitle = searchFields.contains(SEARCH_BY_TITLE);
+        if (searchFields.contains(SEARCH_BY_DESCRIPTION)) {
+            return filmStorage.searchFilms(query, byTitle, searchFields.contains(SEARCH_BY_DIRECTOR), true, fuzzy);
         }
-
-        if (Arrays.asList(searchFields).contains(SEARCH_BY_DIRECTOR)) {
-            resultFilms.addAll(filmStorage.searchFilmsByDirector(query));
+        if (fuzzy) {
+            return filmStorage.searchFilms(query, byTitle, searchFields.contains(SEARCH_BY_DIRECTOR), true);
         }
-
-        genreService.loadGenres(resultFilms);
-        directorService.loadDirectors(resultFilms);
-
-        List<Film> sortedFilms = new ArrayList<>(resultFilms);
-        filmStorage.loadLikes(sortedFilms);
-        sortedFilms.sort((film1, film2) -> Integer.compare(film2.getLikedUsers().size(), film1.getLikedUsers().size()));
-
-        return sortedFilms;
-
+        return filmStorage.searchFilms(query, byTitle, searchFields.contains(SEARCH_BY_DIRECTOR));
     }
 
     public List<Film> getRecommendationByUserId(Long userID) {
-        List<Film> recommendations = filmStorage.getRecommendationByUserId(userID);
-        genreService.loadGenres(recommendations);
-        directorService.loadDirectors(recommendations);
-        return recommendations;
+        return recommendationService.getRecommendations(userID);
     }
 }
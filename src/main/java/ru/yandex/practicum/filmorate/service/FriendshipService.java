@@ -7,7 +7,6 @@ import ru.yandex.practicum.filmorate.storage.friendship.FriendshipStorage;
 
 import java.util.Collection;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class FriendshipService {
@@ -34,11 +33,10 @@ public class FriendshipService {
     }
 
     public Set<Long> getIntersectionOfFriends(User user1, User user2) {
-        final Collection<Long> user1Friends = getFriends(user1);
-        final Collection<Long> user2Friends = getFriends(user2);
+        return friendshipStorage.getCommonFriends(user1, user2);
+    }
 
-        return user1Friends.stream()
-                .filter(user2Friends::contains)
-                .collect(Collectors.toSet());
+    public int countFriends(User user) {
+        return friendshipStorage.countFriends(user);
     }
 }
@@ -5,23 +5,27 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
 
 import java.util.Collection;
 
 @Service
 public class GenreService {
     private final GenreStorage genreStorage;
+    private final ReferenceDataCache referenceData;
 
-    public GenreService(@Qualifier("genreDbStorage") GenreStorage genreStorage) {
+    public GenreService(@Qualifier("genreDbStorage") GenreStorage genreStorage,
+                        ReferenceDataCache referenceData) {
         this.genreStorage = genreStorage;
+        this.referenceData = referenceData;
     }
 
     public Collection<Genre> findAll() {
-        return genreStorage.findAll();
+        return referenceData.findAllGenres();
     }
 
     public Genre findById(Integer genreId) {
-        return genreStorage.findById(genreId);
+        return referenceData.findGenre(genreId);
     }
 
     public void loadGenres(Collection<Film> films) {
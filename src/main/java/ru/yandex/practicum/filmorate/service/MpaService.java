@@ -1,25 +1,24 @@
 package ru.yandex.practicum.filmorate.service;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
 
 import java.util.Collection;
 
 @Service
 public class MpaService {
-    private final MpaStorage mpaStorage;
+    private final ReferenceDataCache referenceData;
 
-    public MpaService(@Qualifier("mpaStorage") MpaStorage mpaStorage) {
-        this.mpaStorage = mpaStorage;
+    public MpaService(ReferenceDataCache referenceData) {
+        this.referenceData = referenceData;
     }
 
     public Collection<Mpa> findAll() {
-        return mpaStorage.findAll();
+        return referenceData.findAllMpa();
     }
 
     public Mpa findById(Integer mpaId) {
-        return mpaStorage.findById(mpaId);
+        return referenceData.findMpa(mpaId);
     }
 }
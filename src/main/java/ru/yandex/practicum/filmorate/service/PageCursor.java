@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// Opaque cursors for keyset pagination: the sort key of the last row of a page, base64 encoded. The next page
+// starts right after that key, so it costs the same however deep the client pages.
+public final class PageCursor {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private PageCursor() {
+    }
+
+    public static int limit(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (requested <= 0) {
+            throw new ConditionsNotMetException("Размер страницы должен быть положительным");
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+
+    public static String encode(long... keys) {
+        String joined = String.join(":", Arrays.stream(keys).mapToObj(Long::toString).toList());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long[] decode(String cursor, int size) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != size) {
+                throw new ConditionsNotMetException("Некорректный курсор: " + cursor);
+            }
+            return Arrays.stream(parts).mapToLong(Long::parseLong).toArray();
+        } catch (IllegalArgumentException e) {
+            throw new ConditionsNotMetException("Некорректный курсор: " + cursor);
+        }
+    }
+
+    // rows were fetched with limit + 1, an extra row means there is a next page
+    public static <T> CursorPage<T> page(List<T> rows, int limit, Function<T, long[]> keys) {
+        if (rows.size() <= limit || limit == 0) {
+            return new CursorPage<>(rows.subList(0, Math.min(rows.size(), limit)), null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new CursorPage<>(items, encode(keys.apply(items.get(limit - 1))));
+    }
+}
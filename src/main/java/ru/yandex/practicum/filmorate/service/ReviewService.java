@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.types.EventType;
 import ru.yandex.practicum.filmorate.model.types.Operation;
@@ -27,6 +28,17 @@ public class ReviewService {
         this.feedService = feedService;
     }
 
+    public CursorPage<Review> findPage(Long filmId, int count, String cursor) {
+        final List<Review> reviews;
+        if (cursor == null) {
+            reviews = findByParameter(filmId, count + 1);
+        } else {
+            long[] key = PageCursor.decode(cursor, 2);
+            reviews = reviewStorage.findPageAfter(filmId, (int) key[0], key[1], count + 1);
+        }
+        return PageCursor.page(reviews, count, review -> new long[]{review.getUseful(), review.getReviewId()});
+    }
+
     public List<Review> findByParameter(Long filmId, int count) {
         if (filmId == null) {
             return reviewStorage.findLimited(count);
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+@Service
+public class SuggestionIndexRefresher {
+    private static final Logger log = LoggerFactory.getLogger(SuggestionIndexRefresher.class);
+    private final FilmStorage filmStorage;
+
+    public SuggestionIndexRefresher(@Qualifier("filmDbStorage") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.suggest.poll-interval:PT10S}")
+    public boolean refresh() {
+        long started = System.currentTimeMillis();
+        boolean rebuilt = filmStorage.rebuildSuggestions();
+        if (rebuilt) {
+            log.info("Индекс подсказок пересобран за {} мс", System.currentTimeMillis() - started);
+        }
+        return rebuilt;
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
@@ -12,7 +13,6 @@ import ru.yandex.practicum.filmorate.model.types.Operation;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class UserService {
@@ -35,14 +35,25 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    public CursorPage<User> findPage(String cursor, int limit) {
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor, 1)[0];
+        return PageCursor.page(userStorage.findPage(afterId, limit + 1), limit, user -> new long[]{user.getId()});
+    }
+
     public User findById(Long userId) {
         return userStorage.findById(userId);
     }
 
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        return userStorage.findExistingIds(userIds);
+    }
+
     public Collection<User> getFriends(User user) {
-        return friendshipService.getFriends(user).stream()
-                .map(this::findById)
-                .collect(Collectors.toCollection(HashSet::new));
+        return new HashSet<>(userStorage.findByIds(friendshipService.getFriends(user)));
+    }
+
+    public int countFriends(User user) {
+        return friendshipService.countFriends(user);
     }
 
     public void create(User user) {
@@ -68,9 +79,7 @@ public class UserService {
     }
 
     public Set<User> getIntersectionOfFriends(User user1, User user2) {
-        return friendshipService.getIntersectionOfFriends(user1, user2).stream()
-                .map(this::findById)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return new LinkedHashSet<>(userStorage.findByIds(friendshipService.getIntersectionOfFriends(user1, user2)));
     }
 
 
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.storage.batch;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs a query with a single "= ANY(?)" placeholder for a collection of ids. The ids are bound as an array,
+// so the SQL text is the same for every call and H2 can reuse its cached statement and plan.
+@Component
+public class BatchLoader {
+    private final JdbcTemplate jdbc;
+    private final int chunkSize;
+    private final int parallelThreshold;
+    private final ExecutorService executor;
+
+    public BatchLoader(JdbcTemplate jdbc,
+                       @Value("${filmorate.batch.chunk-size:1000}") int chunkSize,
+                       @Value("${filmorate.batch.parallel-threshold:4}") int parallelThreshold) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("filmorate.batch.chunk-size должен быть положительным: " + chunkSize);
+        }
+        if (parallelThreshold <= 0) {
+            throw new IllegalArgumentException("filmorate.batch.parallel-threshold должен быть положительным: "
+                    + parallelThreshold);
+        }
+        this.jdbc = jdbc;
+        this.chunkSize = chunkSize;
+        this.parallelThreshold = parallelThreshold;
+        this.executor = Executors.newFixedThreadPool(parallelThreshold, runnable -> {
+            Thread thread = new Thread(runnable, "batch-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void query(String sql, String sqlType, Collection<?> ids, RowCallbackHandler handler) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Object[]> chunks = chunk(ids);
+        // worker threads would not see the rows written by the caller's transaction, so it keeps its connection
+        if (chunks.size() < parallelThreshold || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (Object[] chunk : chunks) {
+                query(sql, sqlType, chunk, handler);
+            }
+            return;
+        }
+
+        final Object lock = new Object();
+        RowCallbackHandler synchronizedHandler = (rs) -> {
+            synchronized (lock) {
+                handler.processRow(rs);
+            }
+        };
+        try {
+            CompletableFuture.allOf(chunks.stream()
+                    .map(chunk -> CompletableFuture.runAsync(() -> query(sql, sqlType, chunk, synchronizedHandler), executor))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void query(String sql, String sqlType, Object[] chunk, RowCallbackHandler handler) {
+        jdbc.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf(sqlType, chunk)), handler);
+    }
+
+    private List<Object[]> chunk(Collection<?> ids) {
+        List<Object> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Object[]> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += chunkSize) {
+            chunks.add(distinctIds.subList(from, Math.min(from + chunkSize, distinctIds.size())).toArray());
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+// Count-min sketch with four 4-bit counters per key, packed sixteen to a long. Used for TinyLFU admission:
+// once the number of increments reaches ten times the cache size all counters are halved, so the estimate
+// follows recent popularity instead of growing forever.
+public class FrequencySketch {
+    private static final long[] SEEDS = {0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions = 0;
+
+    public FrequencySketch(int maximumSize) {
+        int capacity = Math.max(maximumSize, 16);
+        this.table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        this.sampleSize = 10 * capacity;
+    }
+
+    public synchronized void increment(long key) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(key, i));
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    public synchronized int frequency(long key) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counterAt(indexOf(key, i)));
+        }
+        return frequency;
+    }
+
+    private int indexOf(long key, int i) {
+        long hash = (key + SEEDS[i]) * SEEDS[i];
+        hash ^= hash >>> 31;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 29;
+        return (int) (hash & ((long) table.length * 16 - 1));
+    }
+
+    private int counterAt(int index) {
+        return (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT);
+    }
+
+    private boolean incrementAt(int index) {
+        if (counterAt(index) == MAX_COUNT) {
+            return false;
+        }
+        table[index >>> 4] += 1L << ((index & 15) << 2);
+        return true;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+}
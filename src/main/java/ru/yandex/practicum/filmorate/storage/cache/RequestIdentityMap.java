@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Entities loaded while one HTTP request is handled, so repeated lookups of the same row return the same object
+// without another query. RequestIdentityMapFilter opens the map for the request thread and drops it afterwards;
+// outside of a request (scheduled jobs, tests) lookups go straight to the loader. Storages evict on writes.
+@Component
+public class RequestIdentityMap {
+    private final ThreadLocal<Map<Key, Object>> entities = new ThreadLocal<>();
+
+    public void open() {
+        entities.set(new HashMap<>());
+    }
+
+    public void close() {
+        entities.remove();
+    }
+
+    public <T> T find(Class<T> type, Object id, Supplier<T> loader) {
+        Map<Key, Object> loaded = entities.get();
+        if (loaded == null) {
+            return loader.get();
+        }
+        Key key = new Key(type, id);
+        Object entity = loaded.get(key);
+        if (entity == null) {
+            entity = loader.get();
+            loaded.put(key, entity);
+        }
+        return type.cast(entity);
+    }
+
+    public void evict(Class<?> type, Object id) {
+        Map<Key, Object> loaded = entities.get();
+        if (loaded != null) {
+            loaded.remove(new Key(type, id));
+        }
+    }
+
+    private record Key(Class<?> type, Object id) {
+    }
+}
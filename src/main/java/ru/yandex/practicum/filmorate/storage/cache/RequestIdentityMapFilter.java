@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+@Component
+@RequiredArgsConstructor
+public class RequestIdentityMapFilter extends OncePerRequestFilter {
+    private final RequestIdentityMap identityMap;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        identityMap.open();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            identityMap.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.storage.director;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsProvider;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Director names by id, bounded by a CLOCK (second chance) eviction queue. The cache is "complete" while it
+// holds every director, then misses are answered without the database; the first eviction turns that off until
+// the next full load.
+@Component
+public class DirectorCache implements CacheStatsProvider {
+    // map node, boxed key, entry and string headers
+    private static final long ENTRY_BYTES = 128;
+    private final int maxSize;
+    private final Map<Long, Entry> directors = new ConcurrentHashMap<>();
+    private final Queue<Long> clock = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean complete = false;
+
+    public DirectorCache(@Value("${filmorate.cache.directors.max-size:100000}") int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Director get(Long id) {
+        Entry entry = directors.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.increment();
+        return new Director(id, entry.name);
+    }
+
+    public List<Director> getAll() {
+        return directors.entrySet().stream()
+                .map(entry -> new Director(entry.getKey(), entry.getValue().name))
+                .sorted(Comparator.comparingLong(Director::getId))
+                .toList();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean isEmpty() {
+        return directors.isEmpty();
+    }
+
+    public void put(Director director) {
+        final Long id = director.getId();
+        Entry previous = directors.put(id, new Entry(director.getName()));
+        if (previous == null) {
+            clock.offer(id);
+        }
+        evictIfFull();
+    }
+
+    public void putAll(Collection<Director> all) {
+        all.forEach(this::put);
+        complete = all.size() <= maxSize;
+    }
+
+    public void evict(Long id) {
+        directors.remove(id);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long memoryBytes = directors.values().stream()
+                .mapToLong(entry -> ENTRY_BYTES + (entry.name == null ? 0 : 2L * entry.name.length()))
+                .sum();
+        return new CacheStats("directors", hits.sum(), misses.sum(), evictions.sum(), directors.size(), maxSize, memoryBytes);
+    }
+
+    private void evictIfFull() {
+        while (directors.size() > maxSize) {
+            Long id = clock.poll();
+            if (id == null) {
+                return;
+            }
+            Entry entry = directors.get(id);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(id);
+                continue;
+            }
+            if (directors.remove(id, entry)) {
+                evictions.increment();
+                complete = false;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private volatile boolean referenced;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+}
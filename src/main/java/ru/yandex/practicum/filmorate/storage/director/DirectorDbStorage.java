@@ -8,13 +8,19 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
 import ru.yandex.practicum.filmorate.storage.director.mapper.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.film.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.search.SuggestionIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static java.util.function.UnaryOperator.identity;
@@ -23,13 +29,20 @@ import static java.util.function.UnaryOperator.identity;
 @RequiredArgsConstructor
 public class DirectorDbStorage implements DirectorStorage {
     private static final String FIND_ALL_QUERY = "SELECT director_id, name FROM director ORDER BY director_id";
+    private static final String FIND_PAGE_QUERY = "SELECT director_id, name FROM director WHERE director_id > ? ORDER BY director_id LIMIT ?";
     private static final String FIND_BY_ID_QUERY = "SELECT director_id, name FROM director WHERE director_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO director (name) VALUES (?)";
     private static final String UPDATE_BY_ID_QUERY = "UPDATE director SET name = ? WHERE director_id = ?";
     private static final String DELETE_BY_ID_QUERY = "DELETE FROM director WHERE director_id = ?";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT director_id FROM director WHERE director_id = ANY(?)";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT fd.film_id, d.director_id, d.name FROM film_director AS fd INNER JOIN director AS d ON fd.director_id = d.director_id WHERE fd.film_id = ANY(?) ORDER BY fd.director_id";
 
     private final JdbcTemplate jdbc;
     private final DirectorRowMapper mapper;
+    private final BatchLoader batchLoader;
+    private final FilmCache filmCache;
+    private final FilmSearchIndex searchIndex;
+    private final SuggestionIndex suggestionIndex;
 
     @Override
     public Director create(Director director) {
@@ -43,22 +56,33 @@ public class DirectorDbStorage implements DirectorStorage {
 
         Long id = keyHolder.getKeyAs(Long.class);
         director.setId(id);
+        searchIndex.putDirector(director);
+        suggestionIndex.putDirector(director.getId(), director.getName());
 
-        return findById(id);
+        return director;
     }
 
     @Override
     public Director update(Director director) {
-        jdbc.update(UPDATE_BY_ID_QUERY,
+        int updated = jdbc.update(UPDATE_BY_ID_QUERY,
                 director.getName(),
                 director.getId());
+        if (updated == 0) {
+            throw new NotFoundException("Режиссер с id = " + director.getId() + " не найден.");
+        }
+        filmCache.invalidateDirector(director.getId());
+        searchIndex.putDirector(director);
+        suggestionIndex.putDirector(director.getId(), director.getName());
 
-        return findById(director.getId());
+        return director;
     }
 
     @Override
     public Director delete(Director director) {
         jdbc.update(DELETE_BY_ID_QUERY, director.getId());
+        filmCache.invalidateDirector(director.getId());
+        searchIndex.removeDirector(director.getId());
+        suggestionIndex.removeDirector(director.getId());
         return director;
     }
 
@@ -77,18 +101,25 @@ public class DirectorDbStorage implements DirectorStorage {
         return jdbc.query(FIND_ALL_QUERY, mapper);
     }
 
+    @Override
+    public List<Director> findPage(long afterId, int limit) {
+        return jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        final Set<Long> existingIds = new HashSet<>();
+        batchLoader.query(FIND_EXISTING_IDS_QUERY, "BIGINT", ids, (rs) -> {
+            existingIds.add(rs.getLong("director_id"));
+        });
+        return existingIds;
+    }
+
     @Override
     public void loadDirectors(Collection<Film> films) {
         final Map<Long, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, identity()));
 
-        String filmsIds = films.stream()
-                .map(Film::getId)
-                .map(Objects::toString)
-                .collect(Collectors.joining(","));
-        final String loadDirectorsQuery = "SELECT fd.film_id, d.director_id, d.name FROM film_director AS fd INNER JOIN director AS d ON fd.director_id = d.director_id WHERE fd.film_id IN ("
-                + filmsIds + ") ORDER BY fd.director_id";
-
-        jdbc.query(loadDirectorsQuery, (rs) -> {
+        batchLoader.query(LOAD_DIRECTORS_QUERY, "BIGINT", filmById.keySet(), (rs) -> {
             final Film film = filmById.get(rs.getLong("film_id"));
             Director director = mapper.mapRow(rs, 0);
             film.addDirector(director);
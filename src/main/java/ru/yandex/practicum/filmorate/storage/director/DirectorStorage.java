@@ -4,6 +4,8 @@ import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public interface DirectorStorage {
 
@@ -17,5 +19,9 @@ public interface DirectorStorage {
 
     public Collection<Director> findAll();
 
+    public List<Director> findPage(long afterId, int limit);
+
+    public Set<Long> findExistingIds(Collection<Long> ids);
+
     public void loadDirectors(Collection<Film> films);
 }
@@ -41,6 +41,18 @@ public class FeedDbStorage implements FeedStorage {
         return event;
     }
 
+    @Override
+    public void createAll(Collection<Event> events) {
+        jdbc.batchUpdate(INSERT_QUERY, events.stream()
+                .map(event -> new Object[]{
+                        event.getUserId(),
+                        event.getEntityId(),
+                        event.getEventType().toString(),
+                        event.getOperation().toString(),
+                        event.getTimestamp()})
+                .toList());
+    }
+
     @Override
     public Collection<Event> getUserFeed(User user) {
         return jdbc.query(GET_USER_FEED_QUERY, mapper, user.getId());
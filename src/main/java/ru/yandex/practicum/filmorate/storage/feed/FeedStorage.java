@@ -9,5 +9,9 @@ public interface FeedStorage {
 
     public Event create(Event event);
 
+    default void createAll(Collection<Event> events) {
+        events.forEach(this::create);
+    }
+
     public Collection<Event> getUserFeed(User user);
 }
@@ -1,23 +1,53 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.ExportedFilm;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.model.types.Operation;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
+import ru.yandex.practicum.filmorate.storage.cache.RequestIdentityMap;
+import ru.yandex.practicum.filmorate.storage.film.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.export.FilmExporter;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeBuffer;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.film.mapper.HydratedFilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.film.popularity.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.recommendation.FilmRecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.film.search.DescriptionIndex;
+import ru.yandex.practicum.filmorate.storage.film.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.search.SuggestionIndex;
+import ru.yandex.practicum.filmorate.storage.film.similarity.FilmSimilarityIndex;
 
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.util.function.UnaryOperator.identity;
@@ -25,88 +55,66 @@ import static java.util.function.UnaryOperator.identity;
 @Repository("filmDbStorage")
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
-    private static final String FIND_ALL_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id, r.name as rating_name FROM film AS f LEFT JOIN rating AS r ON f.rating_id = r.rating_id ORDER BY f.film_id";
-    private static final String FIND_BY_ID_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id, r.name as rating_name FROM film AS f LEFT JOIN rating AS r ON f.rating_id = r.rating_id WHERE f.film_id = ?";
+    private static final String HYDRATED_FILM_QUERY = """
+            SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id,
+                   (SELECT ARRAY_AGG(fg.genre_id ORDER BY fg.genre_id)
+                    FROM film_genre AS fg
+                    WHERE fg.film_id = f.film_id) AS genre_ids,
+                   (SELECT ARRAY_AGG(d.director_id ORDER BY d.director_id)
+                    FROM film_director AS fd
+                    INNER JOIN director AS d ON fd.director_id = d.director_id
+                    WHERE fd.film_id = f.film_id) AS director_ids,
+                   (SELECT ARRAY_AGG(d.name ORDER BY d.director_id)
+                    FROM film_director AS fd
+                    INNER JOIN director AS d ON fd.director_id = d.director_id
+                    WHERE fd.film_id = f.film_id) AS director_names,
+                   COALESCE(c.likes, 0) AS likes
+            FROM film AS f
+            LEFT JOIN film_like_count AS c ON f.film_id = c.film_id
+            """;
+    private static final String FIND_ALL_QUERY = HYDRATED_FILM_QUERY + "ORDER BY f.film_id";
+    private static final String FIND_PAGE_QUERY = HYDRATED_FILM_QUERY + "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+    private static final String FIND_BY_IDS_QUERY = HYDRATED_FILM_QUERY + "WHERE f.film_id = ANY(?)";
+    private static final String LOAD_LIKES_QUERY = "SELECT film_id, user_id FROM film_like WHERE film_id = ANY(?)";
+    private static final String FIND_BY_ID_QUERY = HYDRATED_FILM_QUERY + "WHERE f.film_id = ?";
     private static final String DELETE_BY_ID_QUERY = "DELETE FROM film WHERE film_id = ?";
     private static final String UPDATE_BY_ID_QUERY = "UPDATE film SET name = ?, description = ?, release_date = ?, duration = ?, rating_id = ? WHERE film_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO film (name, description, release_date, duration, rating_id) VALUES (?, ?, ?, ?, ?)";
     private static final String ADD_GENRE_QUERY = "MERGE INTO film_genre (film_id, genre_id) VALUES (?, ?)";
-    private static final String DELETE_BY_ID_GENRE_QUERY = "DELETE FROM film_genre WHERE film_id = ?";
+    private static final String DELETE_GENRE_QUERY = "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ?";
     private static final String ADD_DIRECTOR_QUERY = "MERGE INTO film_director (film_id, director_id) VALUES (?, ?)";
-    private static final String ADD_LIKE_QUERY = "MERGE INTO film_like (film_id, user_id) VALUES (?, ?)";
-    private static final String DELETE_BY_ID_DIRECTOR_QUERY = "DELETE FROM film_director WHERE film_id = ?";
-    private static final String FIND_ALL_BY_DIRECTOR_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id, r.name as rating_name FROM film AS f LEFT JOIN rating AS r ON f.rating_id = r.rating_id INNER JOIN film_director AS fd ON f.film_id = fd.film_id WHERE fd.director_id = ?";
+    private static final String DELETE_DIRECTOR_QUERY = "DELETE FROM film_director WHERE film_id = ? AND director_id = ?";
+    private static final String FIND_ASSOCIATIONS_QUERY = "SELECT 'genre' AS kind, genre_id AS id FROM film_genre WHERE film_id = ? UNION ALL SELECT 'director' AS kind, director_id AS id FROM film_director WHERE film_id = ?";
+    private static final String ADD_LIKE_QUERY = "INSERT INTO film_like (film_id, user_id) VALUES (?, ?)";
+    private static final String ADD_LIKE_IF_ABSENT_QUERY = "INSERT INTO film_like (film_id, user_id) SELECT CAST(? AS BIGINT), CAST(? AS BIGINT) WHERE NOT EXISTS (SELECT 1 FROM film_like WHERE film_id = ? AND user_id = ?) AND EXISTS (SELECT 1 FROM film WHERE film_id = ?) AND EXISTS (SELECT 1 FROM users WHERE user_id = ?)";
+    private static final String FIND_LIKED_FILM_IDS_QUERY = "SELECT film_id FROM film_like WHERE user_id = ?";
+    private static final String HAS_LIKE_QUERY = "SELECT COUNT(*) FROM film_like WHERE film_id = ? AND user_id = ?";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT film_id FROM film WHERE film_id = ANY(?)";
+    private static final String FIND_ALL_BY_DIRECTOR_QUERY = HYDRATED_FILM_QUERY + "INNER JOIN film_director AS fdf ON f.film_id = fdf.film_id WHERE fdf.director_id = ? ";
+    private static final String FIND_ALL_BY_DIRECTOR_SORTED_BY_YEAR_QUERY = FIND_ALL_BY_DIRECTOR_QUERY + "ORDER BY EXTRACT(YEAR FROM f.release_date), f.film_id";
+    private static final String FIND_ALL_BY_DIRECTOR_SORTED_BY_LIKES_QUERY = FIND_ALL_BY_DIRECTOR_QUERY + "ORDER BY likes DESC, f.film_id";
     private static final String DELETE_LIKE_QUERY = "DELETE FROM film_like WHERE film_id = ? AND user_id = ?";
-    private static final String TOP_LIST_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id, r.name as rating_name, COALESCE(l.likes, 0) AS likes FROM film AS f LEFT JOIN rating AS r ON f.rating_id = r.rating_id LEFT JOIN (SELECT film_id, COUNT(DISTINCT user_id) AS likes FROM film_like GROUP BY film_id) AS l ON f.film_id = l.film_id ORDER BY likes DESC LIMIT ?";
+    private static final String INSERT_LIKE_COUNT_QUERY = "INSERT INTO film_like_count (film_id, likes) VALUES (?, 0)";
+    private static final String INIT_LIKE_COUNT_QUERY = "INSERT INTO film_like_count (film_id, likes) VALUES (?, (SELECT COUNT(*) FROM film_like WHERE film_id = ?))";
+    private static final String INCREMENT_LIKE_COUNT_QUERY = "UPDATE film_like_count SET likes = likes + 1 WHERE film_id = ?";
+    private static final String DECREMENT_LIKE_COUNT_QUERY = "UPDATE film_like_count SET likes = likes - 1 WHERE film_id = ? AND likes > 0";
+    private static final String ADJUST_LIKE_COUNT_QUERY = "UPDATE film_like_count SET likes = GREATEST(likes + ?, 0) WHERE film_id = ?";
 
-    private static final String FIND_POPULAR_QUERY =
+    private static final String SEARCH_FILMS_SQL = HYDRATED_FILM_QUERY +
             """
-                    SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id,
-                           r.name AS rating_name, fl.likes
-                    FROM film AS f
-                    LEFT JOIN rating AS r ON f.rating_id = r.rating_id
-                    LEFT JOIN
-                      (SELECT film_id,
-                              COUNT(DISTINCT user_id) AS likes
-                       FROM film_like
-                       GROUP BY film_id) AS fl ON f.film_id = fl.film_id
-                    WHERE (? IS NULL
-                           OR EXTRACT(YEAR
-                                      FROM f.release_date) = ?)
-                      AND (? IS NULL
-                           OR ? IN
-                             (SELECT genre_id
-                              FROM film_genre
-                              WHERE film_id = f.film_id))
-                    ORDER BY fl.likes DESC
-                    LIMIT ?""";
-
-    private static final String SEARCH_FILMS_BY_DIRECTOR_SQL =
-            """
-                    SELECT
-                             f.film_id,
-                             f.name,
-                             f.description,
-                             f.release_date,
-                             f.duration,
-                             r.rating_id AS rating_id,
-                             r.name AS rating_name,
-                             d.name AS director_name
-                         FROM film AS f
-                         LEFT JOIN rating AS r ON f.rating_id = r.rating_id
-                         LEFT JOIN film_director AS fd ON f.film_id = fd.film_id
-                         LEFT JOIN director AS d ON d.director_id = fd.director_id
-                         WHERE LOWER(d.name) LIKE LOWER(?)
-                         ORDER BY f.film_id
-                     """;
-
-    private static final String SEARCH_FILMS_BY_TITLE_SQL =
+            WHERE (CAST(? AS BOOLEAN) AND LOWER(f.name) LIKE LOWER(?))
+               OR (CAST(? AS BOOLEAN) AND EXISTS
+                     (SELECT 1
+                      FROM film_director AS sfd
+                      INNER JOIN director AS sd ON sfd.director_id = sd.director_id
+                      WHERE sfd.film_id = f.film_id
+                        AND LOWER(sd.name) LIKE LOWER(?)))
+            ORDER BY likes DESC, f.film_id
+            """;
+
+
+    private static final String RECOMMENDATION_LIST_QUERY = HYDRATED_FILM_QUERY +
             """
-                        SELECT
-                            f.film_id,
-                            f.name,
-                            f.description,
-                            f.release_date,
-                            f.duration,
-                            r.rating_id AS rating_id,
-                            r.name AS rating_name,
-                        FROM film AS f
-                        LEFT JOIN rating AS r ON f.rating_id = r.rating_id
-                        WHERE LOWER(f.name) LIKE LOWER(?)
-                        ORDER BY f.film_id
-                    """;
-
-    private static final String RECOMMENDATION_LIST_QUERY = """
-            SELECT
-                f.film_id,
-                f.name,
-                f.description,
-                f.release_date,
-                f.duration,
-                f.rating_id,
-                r.name AS rating_name
-            FROM film AS f
-            LEFT JOIN rating AS r ON f.rating_id = r.rating_id
             WHERE f.film_id IN (
                 SELECT fl.film_id
                 FROM film_like AS fl
@@ -126,28 +134,59 @@ public class FilmDbStorage implements FilmStorage {
             );
             """;
 
-    private static final String FIND_COMMON_QUERY = """
-            SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.rating_id,
-                   r.name AS rating_name, fl.likes
-            FROM film AS f
-            LEFT JOIN rating AS r ON f.rating_id = r.rating_id
-            INNER JOIN
-              (SELECT film_id,
-                      COUNT(DISTINCT user_id) AS likes
-               FROM film_like
-               GROUP BY film_id) AS fl ON f.film_id = fl.film_id
+    private static final String FIND_SHARED_LIKERS_QUERY = """
+            SELECT b.film_id, COUNT(*) AS shared
+            FROM film_like AS a
+            INNER JOIN film_like AS b ON a.user_id = b.user_id AND b.film_id <> a.film_id
+            WHERE a.film_id = ?
+            GROUP BY b.film_id""";
+
+    private static final String FIND_COMMON_QUERY = HYDRATED_FILM_QUERY +
+            """
             WHERE f.film_id IN
                 (SELECT film_id
                  FROM film_like
                  WHERE user_id = ? INTERSECT
                    SELECT film_id
                    FROM film_like WHERE user_id = ?)
-            ORDER BY fl.likes DESC""";
+            ORDER BY likes DESC, f.film_id""";
+
+    private static final String COUNT_LIKE_COUNT_DRIFT_QUERY = """
+            SELECT COUNT(*)
+            FROM film AS f
+            LEFT JOIN film_like_count AS c ON f.film_id = c.film_id
+            LEFT JOIN
+              (SELECT film_id,
+                      COUNT(*) AS likes
+               FROM film_like
+               GROUP BY film_id) AS fl ON f.film_id = fl.film_id
+            WHERE c.film_id IS NULL
+               OR c.likes <> COALESCE(fl.likes, 0)""";
+
+    private static final String REBUILD_LIKE_COUNT_QUERY = """
+            MERGE INTO film_like_count (film_id, likes) KEY (film_id)
+            SELECT f.film_id, COUNT(fl.user_id)
+            FROM film AS f
+            LEFT JOIN film_like AS fl ON f.film_id = fl.film_id
+            GROUP BY f.film_id""";
 
     private final JdbcTemplate jdbc;
-    private final FilmRowMapper mapper;
+    private final HydratedFilmRowMapper mapper;
+    private final BatchLoader batchLoader;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeBuffer likeBuffer;
+    private final FilmLikeIndex likeIndex;
+    private final FilmRecommendationEngine recommendationEngine;
+    private final FilmSimilarityIndex similarityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final DescriptionIndex descriptionIndex;
+    private final SuggestionIndex suggestionIndex;
+    private final FilmExporter filmExporter;
+    private final FilmCache filmCache;
+    private final RequestIdentityMap identityMap;
 
     @Override
+    @Transactional
     public Film create(Film film) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(connection -> {
@@ -167,22 +206,80 @@ public class FilmDbStorage implements FilmStorage {
 
         Long id = keyHolder.getKeyAs(Long.class);
         film.setId(id);
+        jdbc.update(INIT_LIKE_COUNT_QUERY, id, id);
+
+        saveAssociations(film, Set.of(), Set.of());
+        afterCommit(() -> {
+            popularityIndex.addFilm(film);
+            searchIndex.putFilm(film);
+            descriptionIndex.putFilm(id, film.getDescription());
+            suggestionIndex.putFilm(id, film.getName(), 0);
+        });
 
-        if (film.getDirectors() != null) {
-            for (Director director : film.getDirectors()) {
-                jdbc.update(ADD_DIRECTOR_QUERY, film.getId(), director.getId());
-            }
+        return findById(id);
+    }
+
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_QUERY, new String[]{"film_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setObject(1, film.getName());
+                        ps.setObject(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setObject(4, film.getDuration());
+                        ps.setObject(5, film.getMpa() == null ? null : film.getMpa().getId(), java.sql.Types.INTEGER);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
         }
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                jdbc.update(ADD_GENRE_QUERY, film.getId(), genre.getId());
+
+        List<Object[]> likeCounts = new ArrayList<>();
+        List<Object[]> genres = new ArrayList<>();
+        List<Object[]> directors = new ArrayList<>();
+        for (Film film : films) {
+            likeCounts.add(new Object[]{film.getId()});
+            if (film.getGenres() != null) {
+                film.getGenres().forEach(genre -> genres.add(new Object[]{film.getId(), genre.getId()}));
+            }
+            if (film.getDirectors() != null) {
+                film.getDirectors().forEach(director -> directors.add(new Object[]{film.getId(), director.getId()}));
             }
         }
+        jdbc.batchUpdate(INSERT_LIKE_COUNT_QUERY, likeCounts);
+        if (!genres.isEmpty()) {
+            jdbc.batchUpdate(ADD_GENRE_QUERY, genres);
+        }
+        if (!directors.isEmpty()) {
+            jdbc.batchUpdate(ADD_DIRECTOR_QUERY, directors);
+        }
 
-        return findById(id);
+        afterCommit(() -> films.forEach(film -> {
+            popularityIndex.addFilm(film);
+            searchIndex.putFilm(film);
+            descriptionIndex.putFilm(film.getId(), film.getDescription());
+            suggestionIndex.putFilm(film.getId(), film.getName(), 0);
+        }));
+        return films;
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
         jdbc.update(UPDATE_BY_ID_QUERY,
                 film.getName(),
@@ -192,33 +289,110 @@ public class FilmDbStorage implements FilmStorage {
                 (film.getMpa() != null) ? film.getMpa().getId() : null,
                 film.getId());
 
-        jdbc.update(DELETE_BY_ID_DIRECTOR_QUERY, film.getId());
-        if (film.getDirectors() != null) {
-            for (Director director : film.getDirectors()) {
-                jdbc.update(ADD_DIRECTOR_QUERY, film.getId(), director.getId());
+        final Set<Long> storedGenreIds = new HashSet<>();
+        final Set<Long> storedDirectorIds = new HashSet<>();
+        jdbc.query(FIND_ASSOCIATIONS_QUERY, (rs) -> {
+            if ("genre".equals(rs.getString("kind"))) {
+                storedGenreIds.add(rs.getLong("id"));
+            } else {
+                storedDirectorIds.add(rs.getLong("id"));
             }
+        }, film.getId(), film.getId());
+
+        saveAssociations(film, storedGenreIds, storedDirectorIds);
+        filmCache.invalidate(film.getId());
+        identityMap.evict(Film.class, film.getId());
+        afterCommit(() -> {
+            popularityIndex.updateFilm(film);
+            filmCache.invalidate(film.getId());
+            searchIndex.putFilm(film);
+            descriptionIndex.putFilm(film.getId(), film.getDescription());
+            suggestionIndex.putFilm(film.getId(), film.getName(), popularityIndex.getLikes(film.getId()));
+        });
+
+        return findById(film.getId());
+    }
+
+    private void saveAssociations(Film film, Set<Long> storedGenreIds, Set<Long> storedDirectorIds) {
+        final Set<Long> genreIds = film.getGenres() == null ? Set.of() : film.getGenres().stream()
+                .map(genre -> genre.getId().longValue())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        final Set<Long> directorIds = film.getDirectors() == null ? Set.of() : film.getDirectors().stream()
+                .map(Director::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        applyDiff(ADD_GENRE_QUERY, DELETE_GENRE_QUERY, film.getId(), storedGenreIds, genreIds);
+        applyDiff(ADD_DIRECTOR_QUERY, DELETE_DIRECTOR_QUERY, film.getId(), storedDirectorIds, directorIds);
+    }
+
+    private void applyDiff(String addQuery, String deleteQuery, Long filmId, Set<Long> storedIds, Set<Long> ids) {
+        List<Object[]> added = ids.stream()
+                .filter(id -> !storedIds.contains(id))
+                .map(id -> new Object[]{filmId, id})
+                .toList();
+        List<Object[]> deleted = storedIds.stream()
+                .filter(id -> !ids.contains(id))
+                .map(id -> new Object[]{filmId, id})
+                .toList();
+
+        if (!deleted.isEmpty()) {
+            jdbc.batchUpdate(deleteQuery, deleted);
+        }
+        if (!added.isEmpty()) {
+            jdbc.batchUpdate(addQuery, added);
         }
+    }
 
-        jdbc.update(DELETE_BY_ID_GENRE_QUERY, film.getId());
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                jdbc.update(ADD_GENRE_QUERY, film.getId(), genre.getId());
-            }
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 
-        return findById(film.getId());
+    // films read inside a transaction may not be committed yet, only reads outside of one are cached
+    private void cache(Film film, long stamp) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            filmCache.put(film, stamp);
+        }
     }
 
     @Override
     public Film delete(Film film) {
         jdbc.update(DELETE_BY_ID_QUERY, film.getId());
+        filmCache.invalidate(film.getId());
+        identityMap.evict(Film.class, film.getId());
+        likeBuffer.discardFilm(film.getId());
+        likeIndex.removeFilm(film.getId());
+        similarityIndex.removeFilm(film.getId());
+        searchIndex.removeFilm(film.getId());
+        descriptionIndex.removeFilm(film.getId());
+        suggestionIndex.removeFilm(film.getId());
+        recommendationEngine.markStale();
+        afterCommit(() -> popularityIndex.removeFilm(film.getId()));
         return film;
     }
 
     @Override
     public Film findById(Long id) {
+        return identityMap.find(Film.class, id, () -> load(id));
+    }
+
+    private Film load(Long id) {
+        Film cached = filmCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = filmCache.stamp();
         try {
             Film film = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, id);
+            cache(film, stamp);
             return film;
         } catch (EmptyResultDataAccessException ignored) {
             throw new NotFoundException("Фильм с id = " + id + " не найден.");
@@ -231,41 +405,298 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
-    public void addLike(Film film, User user) {
-        jdbc.update(ADD_LIKE_QUERY, film.getId(), user.getId());
+    public long exportFilms(Consumer<ExportedFilm> consumer) {
+        return filmExporter.export(consumer);
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        final Set<Long> existingIds = new HashSet<>();
+        batchLoader.query(FIND_EXISTING_IDS_QUERY, "BIGINT", ids, (rs) -> {
+            existingIds.add(rs.getLong("film_id"));
+        });
+        return existingIds;
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(Film film, User user) {
+        if (likeBuffer.isEnabled()) {
+            return bufferLike(film.getId(), user.getId(), true);
+        }
+        try {
+            jdbc.update(ADD_LIKE_QUERY, film.getId(), user.getId());
+        } catch (DuplicateKeyException ignored) {
+            return false;
+        }
+        if (jdbc.update(INCREMENT_LIKE_COUNT_QUERY, film.getId()) == 0) {
+            jdbc.update(INIT_LIKE_COUNT_QUERY, film.getId(), film.getId());
+        }
+        afterCommit(() -> {
+            popularityIndex.addLike(film.getId());
+            indexLike(new LikeOperation(film.getId(), user.getId(), Operation.ADD));
+        });
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteLike(Film film, User user) {
+        if (likeBuffer.isEnabled()) {
+            return bufferLike(film.getId(), user.getId(), false);
+        }
+        if (jdbc.update(DELETE_LIKE_QUERY, film.getId(), user.getId()) == 0) {
+            return false;
+        }
+        jdbc.update(DECREMENT_LIKE_COUNT_QUERY, film.getId());
+        afterCommit(() -> {
+            popularityIndex.removeLike(film.getId());
+            indexLike(new LikeOperation(film.getId(), user.getId(), Operation.REMOVE));
+        });
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public List<LikeOperation> applyLikes(List<LikeOperation> operations) {
+        final List<LikeOperation> applied = new ArrayList<>();
+        final Map<Long, Long> deltas = writeLikes(operations, applied);
+        afterCommit(() -> {
+            deltas.forEach(popularityIndex::adjustLikes);
+            applied.forEach(this::indexLike);
+        });
+        return applied;
+    }
+
+    @Override
+    public boolean hasLikesToFlush(boolean force) {
+        return likeBuffer.isEnabled() && (force ? likeBuffer.size() > 0 : likeBuffer.shouldFlush());
+    }
+
+    @Override
+    @Transactional
+    public int flushBufferedLikes(boolean force) {
+        if (!force && !likeBuffer.shouldFlush()) {
+            return 0;
+        }
+        final List<LikeOperation> operations = likeBuffer.drain();
+        if (operations.isEmpty()) {
+            return 0;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    likeBuffer.completed(operations);
+                } else {
+                    likeBuffer.requeue(operations);
+                }
+            }
+        });
+
+        // the indexes already hold buffered likes, so only a difference from what was expected is applied
+        final List<LikeOperation> applied = new ArrayList<>();
+        final Map<Long, Long> drift = writeLikes(operations, applied);
+        operations.forEach(operation -> drift.merge(operation.getFilmId(),
+                operation.getOp() == Operation.REMOVE ? 1L : -1L, Long::sum));
+        drift.values().removeIf(delta -> delta == 0);
+
+        // a dropped operation (deleted film or user, stale stored state) is indexed as the row actually is
+        final Set<LikeOperation> appliedSet = new HashSet<>(applied);
+        final List<LikeOperation> dropped = operations.stream()
+                .filter(operation -> !appliedSet.contains(operation))
+                .map(operation -> new LikeOperation(operation.getFilmId(), operation.getUserId(),
+                        jdbc.queryForObject(HAS_LIKE_QUERY, Integer.class, operation.getFilmId(),
+                                operation.getUserId()) > 0 ? Operation.ADD : Operation.REMOVE))
+                .toList();
+        // without the like bitmaps a buffered unlike was indexed from film_like while the row was still there,
+        // so the signatures of those films are recomputed once it is gone
+        final long[] unlikedFilmIds = likeIndex.isEnabled() ? new long[0] : applied.stream()
+                .filter(operation -> operation.getOp() == Operation.REMOVE)
+                .mapToLong(LikeOperation::getFilmId)
+                .distinct()
+                .toArray();
+        afterCommit(() -> {
+            drift.forEach(popularityIndex::adjustLikes);
+            similarityIndex.refreshFilms(unlikedFilmIds);
+            dropped.stream()
+                    .filter(operation -> likeIndex.isEnabled() && likeIndex.hasLike(operation.getFilmId(),
+                            operation.getUserId()) != (operation.getOp() == Operation.ADD))
+                    .forEach(this::indexLike);
+        });
+        return operations.size();
+    }
+
+    // applied collects the operations that actually changed a row
+    private Map<Long, Long> writeLikes(List<LikeOperation> operations, List<LikeOperation> applied) {
+        final Map<List<Long>, Operation> lastOperations = new LinkedHashMap<>();
+        operations.forEach(operation -> lastOperations.put(
+                List.of(operation.getFilmId(), operation.getUserId()), operation.getOp()));
+
+        final List<Object[]> added = new ArrayList<>();
+        final List<Object[]> deleted = new ArrayList<>();
+        lastOperations.forEach((like, op) -> {
+            if (op == Operation.REMOVE) {
+                deleted.add(new Object[]{like.get(0), like.get(1)});
+            } else {
+                added.add(new Object[]{like.get(0), like.get(1), like.get(0), like.get(1), like.get(0), like.get(1)});
+            }
+        });
+
+        final Map<Long, Long> deltas = new LinkedHashMap<>();
+        collectDeltas(added, added.isEmpty() ? new int[0] : jdbc.batchUpdate(ADD_LIKE_IF_ABSENT_QUERY, added),
+                Operation.ADD, deltas, applied);
+        collectDeltas(deleted, deleted.isEmpty() ? new int[0] : jdbc.batchUpdate(DELETE_LIKE_QUERY, deleted),
+                Operation.REMOVE, deltas, applied);
+        if (!deltas.isEmpty()) {
+            jdbc.batchUpdate(ADJUST_LIKE_COUNT_QUERY, deltas.entrySet().stream()
+                    .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                    .toList());
+        }
+        return deltas;
+    }
+
+    private void collectDeltas(List<Object[]> likes, int[] updated, Operation op, Map<Long, Long> deltas,
+                               List<LikeOperation> applied) {
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] > 0) {
+                Long filmId = (Long) likes.get(i)[0];
+                deltas.merge(filmId, op == Operation.REMOVE ? -1L : 1L, Long::sum);
+                applied.add(new LikeOperation(filmId, (Long) likes.get(i)[1], op));
+            }
+        }
+    }
+
+    private void indexLike(LikeOperation operation) {
+        if (operation.getOp() == Operation.REMOVE) {
+            likeIndex.removeLike(operation.getFilmId(), operation.getUserId());
+            similarityIndex.removeLike(operation.getFilmId());
+        } else {
+            likeIndex.addLike(operation.getFilmId(), operation.getUserId());
+            similarityIndex.addLike(operation.getFilmId(), operation.getUserId());
+        }
+        recommendationEngine.markStale();
+    }
+
+    private boolean bufferLike(Long filmId, Long userId, boolean liked) {
+        boolean changed = likeBuffer.offer(filmId, userId, liked, () -> hasLike(filmId, userId));
+        if (changed) {
+            popularityIndex.adjustLikes(filmId, liked ? 1 : -1);
+            indexLike(new LikeOperation(filmId, userId, liked ? Operation.ADD : Operation.REMOVE));
+        }
+        return changed;
     }
 
     @Override
-    public void deleteLike(Film film, User user) {
-        jdbc.update(DELETE_LIKE_QUERY, film.getId(), user.getId());
+    @Transactional
+    public int reconcileLikeCounts() {
+        Integer drift = jdbc.queryForObject(COUNT_LIKE_COUNT_DRIFT_QUERY, Integer.class);
+        if (drift == null || drift == 0) {
+            return 0;
+        }
+        jdbc.update(REBUILD_LIKE_COUNT_QUERY);
+        return drift;
     }
 
     @Override
     public List<Film> getTopFilmsByLike(Long count) {
-        return jdbc.query(TOP_LIST_QUERY, mapper, count);
+        return findByIds(popularityIndex.getTopFilmIds(count));
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        final Map<Long, Film> filmById = new HashMap<>();
+        final List<Long> missingIds = new ArrayList<>();
+        for (Long id : ids) {
+            Film cached = filmCache.get(id);
+            if (cached != null) {
+                filmById.put(id, cached);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        long stamp = filmCache.stamp();
+        batchLoader.query(FIND_BY_IDS_QUERY, "BIGINT", missingIds, (rs) -> {
+            Film film = mapper.mapRow(rs, 0);
+            filmById.put(film.getId(), film);
+            cache(film, stamp);
+        });
+
+        return ids.stream()
+                .map(filmById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
     }
 
     @Override
     public List<Film> getRecommendationByUserId(Long userID) {
-        return jdbc.query(RECOMMENDATION_LIST_QUERY, mapper, userID, userID);
+        if (!recommendationEngine.isReady()) {
+            return jdbc.query(RECOMMENDATION_LIST_QUERY, mapper, userID, userID);
+        }
+        return findByIds(getRecommendedFilmIds(userID));
+    }
+
+    @Override
+    public List<Long> getRecommendedFilmIds(Long userId) {
+        if (!recommendationEngine.isReady()) {
+            return FilmStorage.super.getRecommendedFilmIds(userId);
+        }
+        // the like index is current, the engine's own copy of the user's likes is as old as its snapshot
+        final long[] likedFilms = likeIndex.isEnabled()
+                ? likeIndex.getLikedFilms(userId)
+                : recommendationEngine.getLikedFilms(userId);
+        return Arrays.stream(recommendationEngine.recommend(likedFilms)).boxed().toList();
+    }
+
+    @Override
+    public Set<Long> getLikedFilmIds(Long userId) {
+        if (likeIndex.isEnabled()) {
+            return Arrays.stream(likeIndex.getLikedFilms(userId)).boxed().collect(Collectors.toSet());
+        }
+        return new HashSet<>(jdbc.queryForList(FIND_LIKED_FILM_IDS_QUERY, Long.class, userId));
+    }
+
+    @Override
+    public boolean rebuildRecommendations() {
+        return recommendationEngine.rebuild();
     }
 
     public List<Film> getByDirector(Long directorId) {
         return jdbc.query(FIND_ALL_BY_DIRECTOR_QUERY, mapper, directorId);
     }
 
+    @Override
+    public List<Film> getByDirector(Long directorId, String sortBy) {
+        if ("year".equals(sortBy)) {
+            return jdbc.query(FIND_ALL_BY_DIRECTOR_SORTED_BY_YEAR_QUERY, mapper, directorId);
+        }
+        if ("likes".equals(sortBy)) {
+            return jdbc.query(FIND_ALL_BY_DIRECTOR_SORTED_BY_LIKES_QUERY, mapper, directorId);
+        }
+        return getByDirector(directorId);
+    }
+
+    public boolean hasLike(Long filmId, Long userId) {
+        if (likeIndex.isEnabled()) {
+            return likeIndex.hasLike(filmId, userId);
+        }
+        return jdbc.queryForObject(HAS_LIKE_QUERY, Integer.class, filmId, userId) > 0;
+    }
+
     @Override
     public void loadLikes(Collection<Film> films) {
+        if (likeIndex.isEnabled()) {
+            films.forEach(film -> Arrays.stream(likeIndex.getLikedUsers(film.getId())).forEach(film::addLike));
+            return;
+        }
         final Map<Long, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, identity()));
 
-        String filmsIds = films.stream()
-                .map(Film::getId)
-                .map(Objects::toString)
-                .collect(Collectors.joining(","));
-        final String loadLikedUsers = "SELECT film_id, user_id FROM film_like WHERE film_id IN ("
-                + filmsIds + ")";
-
-        jdbc.query(loadLikedUsers, (rs) -> {
+        batchLoader.query(LOAD_LIKES_QUERY, "BIGINT", filmById.keySet(), (rs) -> {
             final Film film = filmById.get(rs.getLong("film_id"));
             Long userId = rs.getLong("user_id");
             film.addLike(userId);
@@ -274,20 +705,108 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public List<Film> getTopFilmsByLike(Long count, Integer genreId, Integer year) {
-        return jdbc.query(FIND_POPULAR_QUERY, mapper, year, year, genreId, genreId, count);
+        return findByIds(popularityIndex.getTopFilmIds(count, genreId, year));
     }
 
     public List<Film> searchFilmsByTitle(String query) {
-        return jdbc.query(SEARCH_FILMS_BY_TITLE_SQL, mapper, "%" + query + "%");
+        return searchFilms(query, true, false);
     }
 
     public List<Film> searchFilmsByDirector(String query) {
-        return jdbc.query(SEARCH_FILMS_BY_DIRECTOR_SQL, mapper, "%" + query + "%");
+        return searchFilms(query, false, true);
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, boolean byTitle, boolean byDirector) {
+        if (searchIndex.isEnabled()) {
+            return findByIds(orderByLikes(searchIndex.search(query, byTitle, byDirector)));
+        }
+        String pattern = "%" + query + "%";
+        return jdbc.query(SEARCH_FILMS_SQL, mapper, byTitle, pattern, byDirector, pattern);
+    }
+
+    @Override
+    public List<Suggestion> suggest(String prefix, int count) {
+        return suggestionIndex.suggest(prefix, count);
+    }
+
+    @Override
+    public boolean rebuildSuggestions() {
+        if (!suggestionIndex.shouldRebuild(System.currentTimeMillis())) {
+            return false;
+        }
+        suggestionIndex.rebuild();
+        return true;
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, boolean byTitle, boolean byDirector, boolean fuzzy) {
+        if (fuzzy && searchIndex.isEnabled()) {
+            return findByIds(orderByLikes(searchIndex.search(query, byTitle, byDirector, true)));
+        }
+        return searchFilms(query, byTitle, byDirector);
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, boolean byTitle, boolean byDirector, boolean byDescription, boolean fuzzy) {
+        if (!byDescription) {
+            return searchFilms(query, byTitle, byDirector, fuzzy);
+        }
+        final Set<Long> fieldMatches;
+        if (!byTitle && !byDirector) {
+            fieldMatches = Set.of();
+        } else if (searchIndex.isEnabled()) {
+            fieldMatches = searchIndex.search(query, byTitle, byDirector, fuzzy);
+        } else {
+            fieldMatches = searchFilms(query, byTitle, byDirector).stream().map(Film::getId).collect(Collectors.toSet());
+        }
+        if (descriptionIndex.isEnabled()) {
+            return findByIds(descriptionIndex.rank(query, fieldMatches, popularityIndex::getLikes, fuzzy));
+        }
+        // the films the index would return, ordered by likes only
+        final Set<Long> filmIds = new HashSet<>(fieldMatches);
+        filmIds.addAll(descriptionIndex.match(query));
+        return findByIds(orderByLikes(filmIds));
+    }
+
+    @Override
+    public List<Film> getSimilarFilms(Long filmId, int count) {
+        if (similarityIndex.isEnabled()) {
+            return findByIds(similarityIndex.findSimilar(filmId, count));
+        }
+        // exact Jaccard over the films sharing at least one liker, like counts come from the popularity index
+        final long likes = popularityIndex.getLikes(filmId);
+        final Map<Long, Double> similarity = new HashMap<>();
+        jdbc.query(FIND_SHARED_LIKERS_QUERY, (rs) -> {
+            long otherFilmId = rs.getLong("film_id");
+            long shared = rs.getLong("shared");
+            long union = likes + popularityIndex.getLikes(otherFilmId) - shared;
+            similarity.put(otherFilmId, union <= 0 ? 1.0 : (double) shared / union);
+        }, filmId);
+        final List<Long> filmIds = similarity.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .toList();
+        return findByIds(filmIds);
     }
 
     @Override
     public List<Film> getCommonUserFilms(Long thisUserId, Long otherUserId) {
-        return jdbc.query(FIND_COMMON_QUERY, mapper, thisUserId, otherUserId);
+        if (!likeIndex.isEnabled()) {
+            return jdbc.query(FIND_COMMON_QUERY, mapper, thisUserId, otherUserId);
+        }
+        return findByIds(orderByLikes(Arrays.stream(likeIndex.getCommonFilms(thisUserId, otherUserId))
+                .boxed()
+                .toList()));
+    }
+
+    // the order of "ORDER BY likes DESC, f.film_id" without touching the tables
+    private List<Long> orderByLikes(Collection<Long> filmIds) {
+        return filmIds.stream()
+                .sorted(Comparator.comparingLong((Long id) -> -popularityIndex.getLikes(id))
+                        .thenComparingLong(id -> id))
+                .toList();
     }
 
 }
@@ -1,16 +1,30 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import ru.yandex.practicum.filmorate.model.ExportedFilm;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public interface FilmStorage {
 
     public Film create(Film film);
 
+    default List<Film> createAll(List<Film> films) {
+        return films.stream()
+                .map(this::create)
+                .toList();
+    }
+
     public Film update(Film film);
 
     public Film delete(Film film);
@@ -19,9 +33,37 @@ public interface FilmStorage {
 
     public Collection<Film> findAll();
 
-    public void addLike(Film film, User user);
+    default long exportFilms(Consumer<ExportedFilm> consumer) {
+        List<Film> films = findAll().stream()
+                .sorted(Comparator.comparingLong(Film::getId))
+                .toList();
+        films.forEach(film -> consumer.accept(new ExportedFilm(film, film.getLikedUsers().size())));
+        return films.size();
+    }
+
+    default List<Film> findPage(long afterId, int limit) {
+        return findAll().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparingLong(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    default List<Film> findByIds(List<Long> ids) {
+        return ids.stream()
+                .map(this::findById)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    public Set<Long> findExistingIds(Collection<Long> ids);
+
+    // both return whether the like actually changed
+    public boolean addLike(Film film, User user);
 
-    public void deleteLike(Film film, User user);
+    public boolean deleteLike(Film film, User user);
+
+    // returns the operations that changed a like
+    public List<LikeOperation> applyLikes(List<LikeOperation> operations);
 
     public List<Film> getTopFilmsByLike(Long count);
 
@@ -33,14 +75,90 @@ public interface FilmStorage {
         return new ArrayList<>();  // returns empty list for in-memory but see @Override implementation in FilmDbStorage
     }
 
+    default List<Film> getSimilarFilms(Long filmId, int count) {
+        return new ArrayList<>();
+    }
+
     public List<Film> getByDirector(Long directorId);
 
+    default List<Film> getByDirector(Long directorId, String sortBy) {
+        List<Film> films = getByDirector(directorId);
+        loadLikes(films);
+        if (sortBy.equals("year")) {
+            films.sort(Comparator.comparingInt(film -> film.getReleaseDate().getYear()));
+        }
+        if (sortBy.equals("likes")) {
+            films.sort(Comparator.comparingInt(film -> -film.getLikedUsers().size()));
+        }
+        return films;
+    }
+
     public void loadLikes(Collection<Film> films);
 
     public List<Film> searchFilmsByTitle(String query);
 
     public List<Film> searchFilmsByDirector(String query);
 
+    default List<Film> searchFilms(String query, boolean byTitle, boolean byDirector) {
+        Set<Film> films = new LinkedHashSet<>();
+        if (byTitle) {
+            films.addAll(searchFilmsByTitle(query));
+        }
+        if (byDirector) {
+            films.addAll(searchFilmsByDirector(query));
+        }
+        loadLikes(films);
+        List<Film> sortedFilms = new ArrayList<>(films);
+        sortedFilms.sort((film1, film2) -> Integer.compare(film2.getLikedUsers().size(), film1.getLikedUsers().size()));
+        return sortedFilms;
+    }
+
+    default List<Film> searchFilms(String query, boolean byTitle, boolean byDirector, boolean fuzzy) {
+        return searchFilms(query, byTitle, byDirector);
+    }
+
+    default List<Film> searchFilms(String query, boolean byTitle, boolean byDirector, boolean byDescription, boolean fuzzy) {
+        return searchFilms(query, byTitle, byDirector, fuzzy);
+    }
+
+    default List<Suggestion> suggest(String prefix, int count) {
+        return new ArrayList<>();
+    }
+
+    default boolean rebuildSuggestions() {
+        return false;
+    }
+
     public List<Film> getRecommendationByUserId(Long userID);
 
+    default List<Long> getRecommendedFilmIds(Long userId) {
+        return getRecommendationByUserId(userId).stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    default Set<Long> getLikedFilmIds(Long userId) {
+        return findAll().stream()
+                .filter(film -> film.getLikedUsers().contains(userId))
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+    }
+
+    // checked before flushBufferedLikes, so an idle buffer doesn't open a transaction
+    default boolean hasLikesToFlush(boolean force) {
+        return false;
+    }
+
+    default int flushBufferedLikes(boolean force) {
+        return 0;
+    }
+
+    default int reconcileLikeCounts() {
+        return 0;
+    }
+
+    default boolean rebuildRecommendations() {
+        return false;
+    }
+
 }
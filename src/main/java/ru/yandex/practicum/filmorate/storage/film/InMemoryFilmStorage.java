@@ -4,7 +4,9 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.types.Operation;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -51,13 +53,35 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public void addLike(Film film, User user) {
-        film.getLikedUsers().add(user.getId());
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream()
+                .filter(films::containsKey)
+                .collect(Collectors.toSet());
     }
 
     @Override
-    public void deleteLike(Film film, User user) {
-        film.getLikedUsers().remove(user.getId());
+    public boolean addLike(Film film, User user) {
+        return film.getLikedUsers().add(user.getId());
+    }
+
+    @Override
+    public boolean deleteLike(Film film, User user) {
+        return film.getLikedUsers().remove(user.getId());
+    }
+
+    @Override
+    public List<LikeOperation> applyLikes(List<LikeOperation> operations) {
+        final List<LikeOperation> applied = new ArrayList<>();
+        for (LikeOperation operation : operations) {
+            final Film film = findById(operation.getFilmId());
+            boolean changed = operation.getOp() == Operation.REMOVE
+                    ? film.getLikedUsers().remove(operation.getUserId())
+                    : film.getLikedUsers().add(operation.getUserId());
+            if (changed) {
+                applied.add(operation);
+            }
+        }
+        return applied;
     }
 
     @Override
@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.storage.film.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsProvider;
+import ru.yandex.practicum.filmorate.storage.cache.FrequencySketch;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hydrated films by id. When the cache is full a CLOCK victim is chosen and the new film is only admitted if the
+// frequency sketch has seen it more often than the victim (TinyLFU), so a one-off scan can't push out hot titles.
+// Films are copied in and out because Film is mutable. A load started before an invalidation is not stored.
+@Component
+public class FilmCache implements CacheStatsProvider {
+    private static final long FILM_BYTES = 160;
+    private static final long REFERENCE_BYTES = 80;
+    private static final long STRING_BYTES = 40;
+
+    private final int maxSize;
+    private final FrequencySketch sketch;
+    private final Map<Long, Entry> films = new ConcurrentHashMap<>();
+    private final Queue<Long> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong stamp = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder memoryBytes = new LongAdder();
+
+    public FilmCache(@Value("${filmorate.cache.films.max-size:10000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    public Film get(Long id) {
+        sketch.increment(id);
+        Entry entry = films.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.increment();
+        return copyOf(entry.film);
+    }
+
+    public long stamp() {
+        return stamp.get();
+    }
+
+    public void put(Film film, long loadStamp) {
+        final Long id = film.getId();
+        final Entry entry = new Entry(copyOf(film), estimateSize(film));
+        synchronized (this) {
+            if (loadStamp != stamp.get()) {
+                return;
+            }
+            if (!films.containsKey(id) && films.size() >= maxSize) {
+                Long victim = selectVictim();
+                if (victim != null && sketch.frequency(id) <= sketch.frequency(victim)) {
+                    clock.offer(victim);
+                    return;
+                }
+                if (victim != null && remove(victim)) {
+                    evictions.increment();
+                }
+            }
+            Entry previous = films.put(id, entry);
+            if (previous == null) {
+                clock.offer(id);
+            } else {
+                memoryBytes.add(-previous.bytes);
+            }
+            memoryBytes.add(entry.bytes);
+        }
+    }
+
+    public synchronized void invalidate(Long id) {
+        stamp.incrementAndGet();
+        remove(id);
+    }
+
+    public synchronized void invalidateDirector(Long directorId) {
+        stamp.incrementAndGet();
+        films.forEach((id, entry) -> {
+            if (entry.film.getDirectors().stream().anyMatch(director -> directorId.equals(director.getId()))) {
+                remove(id);
+            }
+        });
+    }
+
+    public synchronized void invalidateAll() {
+        stamp.incrementAndGet();
+        films.keySet().forEach(this::remove);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return new CacheStats("films", hits.sum(), misses.sum(), evictions.sum(), films.size(), maxSize, memoryBytes.sum());
+    }
+
+    private Long selectVictim() {
+        Long id;
+        while ((id = clock.poll()) != null) {
+            Entry entry = films.get(id);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(id);
+                continue;
+            }
+            return id;
+        }
+        return null;
+    }
+
+    private boolean remove(Long id) {
+        Entry entry = films.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        memoryBytes.add(-entry.bytes);
+        return true;
+    }
+
+    private static Film copyOf(Film film) {
+        Mpa mpa = film.getMpa() == null ? null : new Mpa(film.getMpa().getId(), film.getMpa().getName());
+        LinkedHashSet<Genre> genres = new LinkedHashSet<>();
+        film.getGenres().forEach(genre -> genres.add(new Genre(genre.getId(), genre.getName())));
+        LinkedHashSet<Director> directors = new LinkedHashSet<>();
+        film.getDirectors().forEach(director -> directors.add(new Director(director.getId(), director.getName())));
+        return new Film(film.getId(), film.getName(), mpa, genres, directors, film.getDescription(),
+                film.getReleaseDate(), film.getDuration(), new HashSet<>(film.getLikedUsers()));
+    }
+
+    private static long estimateSize(Film film) {
+        long bytes = FILM_BYTES + sizeOf(film.getName()) + sizeOf(film.getDescription());
+        if (film.getMpa() != null) {
+            bytes += REFERENCE_BYTES + sizeOf(film.getMpa().getName());
+        }
+        for (Genre genre : film.getGenres()) {
+            bytes += REFERENCE_BYTES + sizeOf(genre.getName());
+        }
+        for (Director director : film.getDirectors()) {
+            bytes += REFERENCE_BYTES + sizeOf(director.getName());
+        }
+        return bytes + REFERENCE_BYTES * film.getLikedUsers().size();
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : STRING_BYTES + 2L * value.length();
+    }
+
+    private static class Entry {
+        private final Film film;
+        private final long bytes;
+        private volatile boolean referenced;
+
+        Entry(Film film, long bytes) {
+            this.film = film;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.storage.film.export;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.ExportedFilm;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Reads the whole film table through one forward-only cursor and hands films out in windows: genres, directors
+// and like counts of a window are loaded with one query each, then the window is passed on and dropped. Only a
+// window of films and one fetch of rows are on the heap at a time, whatever the size of the catalog. The export
+// is one read-only transaction, so the cursor and the window queries share a connection and see the same data.
+@Component
+public class FilmExporter {
+    private static final String STREAM_QUERY = "SELECT film_id, name, description, release_date, duration, rating_id FROM film ORDER BY film_id";
+    private static final String LOAD_GENRES_QUERY = "SELECT film_id, genre_id FROM film_genre WHERE film_id = ANY(?) ORDER BY genre_id";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT fd.film_id, d.director_id, d.name FROM film_director AS fd INNER JOIN director AS d ON fd.director_id = d.director_id WHERE fd.film_id = ANY(?) ORDER BY fd.director_id";
+    private static final String LOAD_LIKES_QUERY = "SELECT film_id, likes FROM film_like_count WHERE film_id = ANY(?)";
+
+    private final JdbcTemplate jdbc;
+    private final FilmRowMapper mapper;
+    private final ReferenceDataCache referenceData;
+    private final int fetchSize;
+    private final int windowSize;
+
+    public FilmExporter(JdbcTemplate jdbc,
+                        FilmRowMapper mapper,
+                        ReferenceDataCache referenceData,
+                        @Value("${filmorate.export.fetch-size:1000}") int fetchSize,
+                        @Value("${filmorate.export.window-size:500}") int windowSize) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+        this.referenceData = referenceData;
+        this.fetchSize = fetchSize;
+        this.windowSize = windowSize;
+    }
+
+    // films in id order, returns how many were exported
+    @Transactional(readOnly = true)
+    public long export(Consumer<ExportedFilm> consumer) {
+        final Map<Long, ExportedFilm> window = new HashMap<>();
+        final List<Long> order = new ArrayList<>(windowSize);
+        final long[] exported = new long[1];
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(STREAM_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (rs) -> {
+            Film film = mapper.mapRow(rs, 0);
+            window.put(film.getId(), new ExportedFilm(film, 0));
+            order.add(film.getId());
+            if (order.size() == windowSize) {
+                exported[0] += flush(window, order, consumer);
+            }
+        });
+        exported[0] += flush(window, order, consumer);
+        return exported[0];
+    }
+
+    private int flush(Map<Long, ExportedFilm> window, List<Long> order, Consumer<ExportedFilm> consumer) {
+        if (order.isEmpty()) {
+            return 0;
+        }
+        queryWindow(LOAD_GENRES_QUERY, order, (rs) -> {
+            int genreId = rs.getInt("genre_id");
+            window.get(rs.getLong("film_id")).getFilm().addGenre(new Genre(genreId, referenceData.getGenreName(genreId)));
+        });
+        queryWindow(LOAD_DIRECTORS_QUERY, order, (rs) -> {
+            window.get(rs.getLong("film_id")).getFilm()
+                    .addDirector(new Director(rs.getLong("director_id"), rs.getString("name")));
+        });
+        queryWindow(LOAD_LIKES_QUERY, order, (rs) -> {
+            window.get(rs.getLong("film_id")).setLikes(rs.getLong("likes"));
+        });
+        order.forEach(filmId -> consumer.accept(window.get(filmId)));
+        int flushed = order.size();
+        window.clear();
+        order.clear();
+        return flushed;
+    }
+
+    private void queryWindow(String sql, List<Long> filmIds, RowCallbackHandler handler) {
+        jdbc.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", filmIds.toArray())), handler);
+    }
+}
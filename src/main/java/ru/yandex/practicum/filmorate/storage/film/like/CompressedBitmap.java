@@ -0,0 +1,254 @@
+package ru.yandex.practicum.filmorate.storage.film.like;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// Set of non-negative ids in the roaring bitmap layout: ids are split into chunks of 2^16 by their high bits, a
+// chunk keeps its low 16 bits as a sorted char[] while it is sparse and switches to a 1024-word bitset once it
+// holds more than 4096 ids. Not thread-safe, FilmLikeIndex guards all access.
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITSET_WORDS = 1 << 10;
+
+    private long[] keys = new long[0];
+    private Chunk[] chunks = new Chunk[0];
+    private int size;
+
+    public boolean add(long id) {
+        final long key = id >>> 16;
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            index = -index - 1;
+            keys = insert(keys, index, key);
+            Chunk[] updated = new Chunk[chunks.length + 1];
+            System.arraycopy(chunks, 0, updated, 0, index);
+            updated[index] = new Chunk();
+            System.arraycopy(chunks, index, updated, index + 1, chunks.length - index);
+            chunks = updated;
+        }
+        if (chunks[index].add((char) id)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean remove(long id) {
+        final int index = Arrays.binarySearch(keys, id >>> 16);
+        if (index < 0 || !chunks[index].remove((char) id)) {
+            return false;
+        }
+        size--;
+        if (chunks[index].size == 0) {
+            long[] updatedKeys = new long[keys.length - 1];
+            Chunk[] updatedChunks = new Chunk[chunks.length - 1];
+            System.arraycopy(keys, 0, updatedKeys, 0, index);
+            System.arraycopy(keys, index + 1, updatedKeys, index, keys.length - index - 1);
+            System.arraycopy(chunks, 0, updatedChunks, 0, index);
+            System.arraycopy(chunks, index + 1, updatedChunks, index, chunks.length - index - 1);
+            keys = updatedKeys;
+            chunks = updatedChunks;
+        }
+        return true;
+    }
+
+    public boolean contains(long id) {
+        final int index = Arrays.binarySearch(keys, id >>> 16);
+        return index >= 0 && chunks[index].contains((char) id);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        final long[] ids = new long[size];
+        final int[] position = {0};
+        forEach(id -> ids[position[0]++] = id);
+        return ids;
+    }
+
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            chunks[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public long[] and(CompressedBitmap other) {
+        final long[] common = new long[Math.min(size, other.size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                count = chunks[i].and(other.chunks[j], keys[i] << 16, common, count);
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    public long sizeInBytes() {
+        long bytes = 16L * keys.length;
+        for (Chunk chunk : chunks) {
+            bytes += chunk.bits != null ? 8L * BITSET_WORDS : 2L * chunk.values.length;
+        }
+        return bytes;
+    }
+
+    private static long[] insert(long[] array, int index, long value) {
+        long[] updated = new long[array.length + 1];
+        System.arraycopy(array, 0, updated, 0, index);
+        updated[index] = value;
+        System.arraycopy(array, index, updated, index + 1, array.length - index);
+        return updated;
+    }
+
+    private static final class Chunk {
+        private char[] values = new char[4];
+        private long[] bits;
+        private int size;
+
+        boolean add(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[low >>> 6] |= mask;
+                size++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (size == ARRAY_LIMIT) {
+                toBitset();
+                return add(low);
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(size * 2, 4), ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+            size++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[low >>> 6] &= ~mask;
+                size--;
+                // converting back only well below the limit avoids flapping around it
+                if (size <= ARRAY_LIMIT / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        void forEach(long base, LongConsumer action) {
+            if (bits != null) {
+                for (int word = 0; word < BITSET_WORDS; word++) {
+                    long remaining = bits[word];
+                    while (remaining != 0) {
+                        action.accept(base | ((long) word << 6) | Long.numberOfTrailingZeros(remaining));
+                        remaining &= remaining - 1;
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        int and(Chunk other, long base, long[] out, int count) {
+            if (bits != null && other.bits != null) {
+                for (int word = 0; word < BITSET_WORDS; word++) {
+                    long remaining = bits[word] & other.bits[word];
+                    while (remaining != 0) {
+                        out[count++] = base | ((long) word << 6) | Long.numberOfTrailingZeros(remaining);
+                        remaining &= remaining - 1;
+                    }
+                }
+                return count;
+            }
+            if (bits != null) {
+                return other.and(this, base, out, count);
+            }
+            if (other.bits != null) {
+                for (int i = 0; i < size; i++) {
+                    if (other.contains(values[i])) {
+                        out[count++] = base | values[i];
+                    }
+                }
+                return count;
+            }
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (values[i] < other.values[j]) {
+                    i++;
+                } else if (values[i] > other.values[j]) {
+                    j++;
+                } else {
+                    out[count++] = base | values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        private void toBitset() {
+            bits = new long[BITSET_WORDS];
+            for (int i = 0; i < size; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toArray() {
+            values = new char[size];
+            int count = 0;
+            for (int word = 0; word < BITSET_WORDS; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    values[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            bits = null;
+        }
+    }
+}
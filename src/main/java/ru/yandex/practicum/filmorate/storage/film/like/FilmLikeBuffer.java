@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.storage.film.like;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.types.Operation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+// Pending like/unlike operations keyed by (film, user). Only real transitions are kept: an unlike that follows
+// a buffered like of a film the user had not liked before cancels it, so every drained operation changes film_like.
+// Drained operations stay visible as in-flight until their transaction completes.
+@Component
+public class FilmLikeBuffer {
+    private final boolean enabled;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final Map<LikeKey, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<LikeKey, Pending> inFlight = new ConcurrentHashMap<>();
+    private volatile long lastDrainAt = System.nanoTime();
+
+    public FilmLikeBuffer(@Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                          @Value("${filmorate.likes.write-behind.flush-size:1000}") int flushSize,
+                          @Value("${filmorate.likes.write-behind.flush-interval:PT1S}") Duration flushInterval) {
+        this.enabled = enabled;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // storedLike is only asked when neither a pending nor an in-flight operation knows the stored state. It is
+    // called outside of compute, so a lookup never runs under the map entry lock; the entry is then retried.
+    public boolean offer(Long filmId, Long userId, boolean liked, BooleanSupplier storedLike) {
+        final LikeKey key = new LikeKey(filmId, userId);
+        Boolean knownStored = null;
+        while (true) {
+            final Boolean stored = knownStored;
+            final boolean[] result = new boolean[2];
+            pending.compute(key, (k, current) -> {
+                Pending flushing = current == null ? inFlight.get(k) : null;
+                if (current == null && flushing == null && stored == null) {
+                    return null;
+                }
+                boolean storedState = current != null ? current.stored()
+                        : flushing != null ? flushing.liked() : stored;
+                boolean state = current != null ? current.liked() : storedState;
+                result[0] = true;
+                result[1] = state != liked;
+                return liked == storedState ? null : new Pending(liked, storedState);
+            });
+            if (result[0]) {
+                return result[1];
+            }
+            knownStored = storedLike.getAsBoolean();
+        }
+    }
+
+    public boolean shouldFlush() {
+        return pending.size() >= flushSize
+                || (!pending.isEmpty() && System.nanoTime() - lastDrainAt >= flushIntervalNanos);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    // the change to the film's stored like count that is still waiting to be drained
+    public long pendingDelta(Long filmId) {
+        return pending.entrySet().stream()
+                .filter(entry -> entry.getKey().filmId() == filmId)
+                .mapToLong(entry -> entry.getValue().liked() ? 1 : -1)
+                .sum();
+    }
+
+    public List<LikeOperation> drain() {
+        lastDrainAt = System.nanoTime();
+        final List<LikeOperation> operations = new ArrayList<>();
+        for (LikeKey key : pending.keySet()) {
+            if (operations.size() >= flushSize) {
+                break;
+            }
+            pending.computeIfPresent(key, (k, value) -> {
+                inFlight.put(k, value);
+                operations.add(new LikeOperation(k.filmId(), k.userId(), value.liked() ? Operation.ADD : Operation.REMOVE));
+                return null;
+            });
+        }
+        return operations;
+    }
+
+    public void completed(List<LikeOperation> operations) {
+        operations.forEach(operation -> inFlight.remove(keyOf(operation)));
+    }
+
+    public void requeue(List<LikeOperation> operations) {
+        for (LikeOperation operation : operations) {
+            final LikeKey key = keyOf(operation);
+            final Pending flushing = inFlight.get(key);
+            if (flushing == null) {
+                continue;
+            }
+            pending.compute(key, (k, current) -> {
+                if (current == null) {
+                    return flushing;
+                }
+                return current.liked() == flushing.stored() ? null : new Pending(current.liked(), flushing.stored());
+            });
+            inFlight.remove(key, flushing);
+        }
+    }
+
+    // in-flight operations of the film are forgotten as well, so a failed flush does not requeue them
+    public void discardFilm(Long filmId) {
+        pending.keySet().removeIf(key -> key.filmId() == filmId);
+        inFlight.keySet().removeIf(key -> key.filmId() == filmId);
+    }
+
+    private LikeKey keyOf(LikeOperation operation) {
+        return new LikeKey(operation.getFilmId(), operation.getUserId());
+    }
+
+    private record LikeKey(long filmId, long userId) {
+    }
+
+    private record Pending(boolean liked, boolean stored) {
+    }
+}
@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.storage.film.like;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// film_like kept twice as compressed bitmaps: liking users per film and liked films per user. Like counts and
+// "has liked" checks are lookups, common films of two users are a bitmap AND. Disabled, every method is a no-op.
+@Component
+public class FilmLikeIndex {
+    private static final String LOAD_QUERY = "SELECT film_id, user_id FROM film_like";
+    private static final long[] EMPTY = new long[0];
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final Map<Long, CompressedBitmap> usersByFilm = new HashMap<>();
+    private final Map<Long, CompressedBitmap> filmsByUser = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FilmLikeIndex(JdbcTemplate jdbc,
+                         @Value("${filmorate.likes.bitmap-index.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            usersByFilm.clear();
+            filmsByUser.clear();
+            jdbc.query(LOAD_QUERY, (rs) -> {
+                add(rs.getLong("film_id"), rs.getLong("user_id"));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addLike(long filmId, long userId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            add(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId, long userId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(usersByFilm, filmId, userId);
+            remove(filmsByUser, userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        removeAll(usersByFilm, filmsByUser, filmId);
+    }
+
+    public void removeUser(long userId) {
+        removeAll(filmsByUser, usersByFilm, userId);
+    }
+
+    public boolean hasLike(long filmId, long userId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap users = usersByFilm.get(filmId);
+            return users != null && users.contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countLikes(long filmId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap users = usersByFilm.get(filmId);
+            return users == null ? 0 : users.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] getLikedUsers(long filmId) {
+        return toArray(usersByFilm, filmId);
+    }
+
+    public long[] getLikedFilms(long userId) {
+        return toArray(filmsByUser, userId);
+    }
+
+    public int countCommonLikers(long filmId, long otherFilmId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap users = usersByFilm.get(filmId);
+            CompressedBitmap otherUsers = usersByFilm.get(otherFilmId);
+            return users == null || otherUsers == null ? 0 : users.and(otherUsers).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] getCommonFilms(long userId, long otherUserId) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap films = filmsByUser.get(userId);
+            CompressedBitmap otherFilms = filmsByUser.get(otherUserId);
+            if (films == null || otherFilms == null) {
+                return EMPTY;
+            }
+            return films.and(otherFilms);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(long filmId, long userId) {
+        usersByFilm.computeIfAbsent(filmId, id -> new CompressedBitmap()).add(userId);
+        filmsByUser.computeIfAbsent(userId, id -> new CompressedBitmap()).add(filmId);
+    }
+
+    private void remove(Map<Long, CompressedBitmap> bitmaps, long key, long value) {
+        CompressedBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+    }
+
+    private void removeAll(Map<Long, CompressedBitmap> bitmaps, Map<Long, CompressedBitmap> reverse, long key) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            CompressedBitmap removed = bitmaps.remove(key);
+            if (removed != null) {
+                removed.forEach(value -> remove(reverse, value, key));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long[] toArray(Map<Long, CompressedBitmap> bitmaps, long key) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap bitmap = bitmaps.get(key);
+            return bitmap == null ? EMPTY : bitmap.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
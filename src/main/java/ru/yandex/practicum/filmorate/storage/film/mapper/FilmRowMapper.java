@@ -5,6 +5,7 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -12,6 +13,7 @@ import java.sql.SQLException;
 @Component
 @RequiredArgsConstructor
 public class FilmRowMapper implements RowMapper<Film> {
+    private final ReferenceDataCache referenceData;
 
     @Override
     public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
@@ -22,7 +24,8 @@ public class FilmRowMapper implements RowMapper<Film> {
         film.setReleaseDate(resultSet.getDate("release_date").toLocalDate());
         film.setDuration(resultSet.getInt("duration"));
 
-        Mpa mpa = new Mpa(resultSet.getInt("rating_id"), resultSet.getString("rating_name"));
+        int ratingId = resultSet.getInt("rating_id");
+        Mpa mpa = new Mpa(ratingId, referenceData.getMpaName(ratingId));
         film.setMpa(mpa);
 
         return film;
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage.film.mapper;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@Component
+@RequiredArgsConstructor
+public class HydratedFilmRowMapper implements RowMapper<Film> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final FilmRowMapper filmRowMapper;
+    private final ReferenceDataCache referenceData;
+
+    @Override
+    public Film mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        Film film = filmRowMapper.mapRow(resultSet, rowNum);
+
+        Object[] genreIds = toArray(resultSet.getArray("genre_ids"));
+        for (Object genreId : genreIds) {
+            int id = ((Number) genreId).intValue();
+            film.addGenre(new Genre(id, referenceData.getGenreName(id)));
+        }
+
+        Object[] directorIds = toArray(resultSet.getArray("director_ids"));
+        Object[] directorNames = toArray(resultSet.getArray("director_names"));
+        for (int i = 0; i < directorIds.length; i++) {
+            film.addDirector(new Director(((Number) directorIds[i]).longValue(), (String) directorNames[i]));
+        }
+
+        return film;
+    }
+
+    private Object[] toArray(Array array) throws SQLException {
+        if (array == null) {
+            return EMPTY;
+        }
+        return (Object[]) array.getArray();
+    }
+}
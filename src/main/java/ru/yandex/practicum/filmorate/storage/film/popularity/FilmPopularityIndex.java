@@ -0,0 +1,226 @@
+package ru.yandex.practicum.filmorate.storage.film.popularity;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeBuffer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Component
+@RequiredArgsConstructor
+public class FilmPopularityIndex {
+    private static final String LOAD_FILMS_QUERY = "SELECT f.film_id, EXTRACT(YEAR FROM f.release_date) AS release_year, COUNT(fl.user_id) AS likes FROM film AS f LEFT JOIN film_like AS fl ON f.film_id = fl.film_id GROUP BY f.film_id, f.release_date";
+    private static final String LOAD_GENRES_QUERY = "SELECT film_id, genre_id FROM film_genre";
+    private static final String SEED_FILM_QUERY = "SELECT EXTRACT(YEAR FROM f.release_date) AS release_year, COALESCE(c.likes, 0) AS likes FROM film AS f LEFT JOIN film_like_count AS c ON f.film_id = c.film_id WHERE f.film_id = ?";
+    private static final String SEED_GENRES_QUERY = "SELECT genre_id FROM film_genre WHERE film_id = ?";
+
+    private final JdbcTemplate jdbc;
+    private final FilmLikeBuffer likeBuffer;
+    private final PopularityRanking ranking = new PopularityRanking();
+    private final Map<Integer, PopularityRanking> rankingByGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, PopularityRanking> rankingByYear = new ConcurrentHashMap<>();
+    private final Map<GenreYear, PopularityRanking> rankingByGenreAndYear = new ConcurrentHashMap<>();
+    private final Map<Long, Partitions> partitionsByFilm = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        ranking.clear();
+        rankingByGenre.clear();
+        rankingByYear.clear();
+        rankingByGenreAndYear.clear();
+        partitionsByFilm.clear();
+
+        final Map<Long, Set<Integer>> genresByFilm = new ConcurrentHashMap<>();
+        jdbc.query(LOAD_GENRES_QUERY, (rs) -> {
+            genresByFilm.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getInt("genre_id"));
+        });
+        jdbc.query(LOAD_FILMS_QUERY, (rs) -> {
+            long filmId = rs.getLong("film_id");
+            ranking.put(filmId, rs.getLong("likes"));
+            place(filmId, new Partitions(rs.getInt("release_year"), genresByFilm.getOrDefault(filmId, Set.of())));
+        });
+    }
+
+    public void addFilm(Film film) {
+        ranking.put(film.getId(), ranking.getLikes(film.getId()));
+        place(film.getId(), partitionsOf(film));
+    }
+
+    public void updateFilm(Film film) {
+        if (!ranking.contains(film.getId())) {
+            addFilm(film);
+            return;
+        }
+        place(film.getId(), partitionsOf(film));
+    }
+
+    public void removeFilm(Long filmId) {
+        partitionsByFilm.computeIfPresent(filmId, (id, partitions) -> {
+            removeFrom(partitions, null, id);
+            ranking.remove(id);
+            return null;
+        });
+    }
+
+    public void addLike(Long filmId) {
+        adjust(filmId, 1);
+    }
+
+    public void removeLike(Long filmId) {
+        adjust(filmId, -1);
+    }
+
+    public void adjustLikes(Long filmId, long delta) {
+        adjust(filmId, delta);
+    }
+
+    public long getLikes(Long filmId) {
+        return ranking.getLikes(filmId);
+    }
+
+    public List<Long> getTopFilmIds(long count) {
+        return ranking.top(count);
+    }
+
+    public List<Long> getTopFilmIds(long count, Integer genreId, Integer year) {
+        final PopularityRanking partition;
+        if (genreId != null && year != null) {
+            partition = rankingByGenreAndYear.get(new GenreYear(genreId, year));
+        } else if (genreId != null) {
+            partition = rankingByGenre.get(genreId);
+        } else if (year != null) {
+            partition = rankingByYear.get(year);
+        } else {
+            partition = ranking;
+        }
+        return partition == null ? List.of() : partition.top(count);
+    }
+
+    // a like can commit before the afterCommit addFilm of the transaction that created the film has run, so a
+    // film that is not indexed yet is seeded from the storage, which already counts the change, instead of dropping it
+    private void adjust(Long filmId, long delta) {
+        while (partitionsByFilm.computeIfPresent(filmId, (id, partitions) -> {
+            ranking.adjust(id, delta);
+            existingRankingsOf(partitions).forEach(partition -> partition.adjust(id, delta));
+            return partitions;
+        }) == null) {
+            final Seed seed = loadSeed(filmId);
+            if (seed == null) {
+                return;
+            }
+            final boolean[] seeded = new boolean[1];
+            partitionsByFilm.computeIfAbsent(filmId, id -> {
+                seeded[0] = true;
+                ranking.put(id, seed.likes());
+                putInto(rankingByYear, seed.partitions().year(), id, seed.likes());
+                for (Integer genreId : seed.partitions().genreIds()) {
+                    putInto(rankingByGenre, genreId, id, seed.likes());
+                    putInto(rankingByGenreAndYear, new GenreYear(genreId, seed.partitions().year()), id, seed.likes());
+                }
+                return seed.partitions();
+            });
+            // addFilm got there first, so the change is applied to its entry
+            if (seeded[0]) {
+                return;
+            }
+        }
+    }
+
+    // queried outside of the map entry lock; buffered likes are not stored yet and are added on top
+    private Seed loadSeed(Long filmId) {
+        final List<Seed> seeds = jdbc.query(SEED_FILM_QUERY, (rs, rowNum) -> new Seed(
+                rs.getLong("likes"), new Partitions(rs.getInt("release_year"), Set.of())), filmId);
+        if (seeds.isEmpty()) {
+            return null;
+        }
+        final Set<Integer> genreIds = new HashSet<>(jdbc.queryForList(SEED_GENRES_QUERY, Integer.class, filmId));
+        final long likes = Math.max(0, seeds.get(0).likes() + likeBuffer.pendingDelta(filmId));
+        return new Seed(likes, new Partitions(seeds.get(0).partitions().year(), genreIds));
+    }
+
+    private void place(long filmId, Partitions newPartitions) {
+        partitionsByFilm.compute(filmId, (id, oldPartitions) -> {
+            if (oldPartitions != null) {
+                removeFrom(oldPartitions, newPartitions, id);
+            }
+            long likes = ranking.getLikes(id);
+            putInto(rankingByYear, newPartitions.year(), id, likes);
+            for (Integer genreId : newPartitions.genreIds()) {
+                putInto(rankingByGenre, genreId, id, likes);
+                putInto(rankingByGenreAndYear, new GenreYear(genreId, newPartitions.year()), id, likes);
+            }
+            return newPartitions;
+        });
+    }
+
+    // removes the film from the partitions that are not kept, kept == null removes it from all of them
+    private void removeFrom(Partitions partitions, Partitions kept, long filmId) {
+        boolean keptYear = kept != null && kept.year() == partitions.year();
+        if (!keptYear) {
+            removeFrom(rankingByYear, partitions.year(), filmId);
+        }
+        for (Integer genreId : partitions.genreIds()) {
+            boolean keptGenre = kept != null && kept.genreIds().contains(genreId);
+            if (!keptGenre) {
+                removeFrom(rankingByGenre, genreId, filmId);
+            }
+            if (!keptGenre || !keptYear) {
+                removeFrom(rankingByGenreAndYear, new GenreYear(genreId, partitions.year()), filmId);
+            }
+        }
+    }
+
+    private List<PopularityRanking> existingRankingsOf(Partitions partitions) {
+        List<PopularityRanking> rankings = new ArrayList<>();
+        rankings.add(rankingByYear.get(partitions.year()));
+        for (Integer genreId : partitions.genreIds()) {
+            rankings.add(rankingByGenre.get(genreId));
+            rankings.add(rankingByGenreAndYear.get(new GenreYear(genreId, partitions.year())));
+        }
+        rankings.removeIf(Objects::isNull);
+        return rankings;
+    }
+
+    // a partition is created and dropped under its map entry lock, so a concurrent put never lands in a dropped one
+    private static <K> void putInto(Map<K, PopularityRanking> rankings, K key, long filmId, long likes) {
+        rankings.compute(key, (k, partition) -> {
+            PopularityRanking target = partition == null ? new PopularityRanking() : partition;
+            target.put(filmId, likes);
+            return target;
+        });
+    }
+
+    private static <K> void removeFrom(Map<K, PopularityRanking> rankings, K key, long filmId) {
+        rankings.computeIfPresent(key, (k, partition) -> {
+            partition.remove(filmId);
+            return partition.size() == 0 ? null : partition;
+        });
+    }
+
+    private Partitions partitionsOf(Film film) {
+        Set<Integer> genreIds = film.getGenres() == null ? Set.of() : film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+        return new Partitions(film.getReleaseDate().getYear(), genreIds);
+    }
+
+    private record Partitions(int year, Set<Integer> genreIds) {
+    }
+
+    private record GenreYear(int genreId, int year) {
+    }
+
+    private record Seed(long likes, Partitions partitions) {
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.film.popularity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class PopularityRanking {
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final Map<Long, Long> likesByFilm = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+    public void put(long filmId, long likes) {
+        likesByFilm.compute(filmId, (id, oldLikes) -> move(id, oldLikes, likes));
+    }
+
+    public void adjust(long filmId, long delta) {
+        likesByFilm.computeIfPresent(filmId, (id, oldLikes) -> move(id, oldLikes, Math.max(0, oldLikes + delta)));
+    }
+
+    public void remove(long filmId) {
+        Long likes = likesByFilm.remove(filmId);
+        if (likes != null) {
+            entries.remove(new Entry(likes, filmId));
+        }
+    }
+
+    public long getLikes(long filmId) {
+        return likesByFilm.getOrDefault(filmId, 0L);
+    }
+
+    public boolean contains(long filmId) {
+        return likesByFilm.containsKey(filmId);
+    }
+
+    public int size() {
+        return likesByFilm.size();
+    }
+
+    public void clear() {
+        likesByFilm.clear();
+        entries.clear();
+    }
+
+    public List<Long> top(long count) {
+        List<Long> filmIds = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (Entry entry : entries) {
+            if (filmIds.size() >= count) {
+                break;
+            }
+            // a film being moved to its new position may briefly be seen twice
+            if (seen.add(entry.filmId())) {
+                filmIds.add(entry.filmId());
+            }
+        }
+        return filmIds;
+    }
+
+    private Long move(long filmId, Long oldLikes, long newLikes) {
+        entries.add(new Entry(newLikes, filmId));
+        if (oldLikes != null && oldLikes != newLikes) {
+            entries.remove(new Entry(oldLikes, filmId));
+        }
+        return newLikes;
+    }
+
+    private record Entry(long likes, long filmId) {
+    }
+}
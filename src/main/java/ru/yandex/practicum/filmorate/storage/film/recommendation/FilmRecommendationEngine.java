@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.storage.film.recommendation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Likes as a sparse user x film matrix over primitive arrays: CSR gives the films of a user, CSC the users of a
+// film. From them every film gets its top-K co-occurring films (liked by the same users). Candidates for a user
+// are scored by summing the co-occurrence with the films they liked, which is the ranking RECOMMENDATION_LIST_QUERY
+// computes when K is unbounded. The matrix is an immutable snapshot, rebuilt in the background after likes change.
+@Component
+public class FilmRecommendationEngine {
+    private static final String LOAD_QUERY = "SELECT user_id, film_id FROM film_like ORDER BY user_id, film_id";
+    private static final long[] EMPTY = new long[0];
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final int topK;
+    private final AtomicLong version = new AtomicLong();
+    private volatile long builtVersion = -1;
+    private volatile Snapshot snapshot;
+
+    public FilmRecommendationEngine(JdbcTemplate jdbc,
+                                    @Value("${filmorate.recommendations.engine.enabled:true}") boolean enabled,
+                                    @Value("${filmorate.recommendations.top-k:100}") int topK) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.topK = topK <= 0 ? Integer.MAX_VALUE : topK;
+    }
+
+    public boolean isReady() {
+        return enabled && snapshot != null;
+    }
+
+    public void markStale() {
+        version.incrementAndGet();
+    }
+
+    public synchronized boolean rebuild() {
+        if (!enabled) {
+            return false;
+        }
+        long current = version.get();
+        if (snapshot != null && current == builtVersion) {
+            return false;
+        }
+        snapshot = build();
+        builtVersion = current;
+        return true;
+    }
+
+    public long[] getLikedFilms(long userId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return EMPTY;
+        }
+        int user = Arrays.binarySearch(current.userIds, userId);
+        if (user < 0) {
+            return EMPTY;
+        }
+        long[] films = new long[current.userOffsets[user + 1] - current.userOffsets[user]];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = current.filmIds[current.userFilms[current.userOffsets[user] + i]];
+        }
+        return films;
+    }
+
+    // film ids ordered by score, the liked films themselves are never recommended
+    public long[] recommend(long[] likedFilmIds) {
+        final Snapshot current = snapshot;
+        if (current == null || likedFilmIds.length == 0) {
+            return EMPTY;
+        }
+        final long[] scores = new long[current.filmIds.length];
+        final int[] liked = new int[likedFilmIds.length];
+        int likedCount = 0;
+        for (long filmId : likedFilmIds) {
+            int film = Arrays.binarySearch(current.filmIds, filmId);
+            if (film >= 0) {
+                scores[film] = Long.MIN_VALUE;
+                liked[likedCount++] = film;
+            }
+        }
+
+        int[] candidates = new int[16];
+        int candidateCount = 0;
+        for (int i = 0; i < likedCount; i++) {
+            int film = liked[i];
+            for (int n = current.neighborOffsets[film]; n < current.neighborOffsets[film + 1]; n++) {
+                int candidate = current.neighborFilms[n];
+                if (scores[candidate] == Long.MIN_VALUE) {
+                    continue;
+                }
+                if (scores[candidate] == 0) {
+                    if (candidateCount == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                    }
+                    candidates[candidateCount++] = candidate;
+                }
+                scores[candidate] += current.neighborWeights[n];
+            }
+        }
+
+        return Arrays.stream(candidates, 0, candidateCount)
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer film) -> -scores[film]).thenComparingInt(film -> film))
+                .mapToLong(film -> current.filmIds[film])
+                .toArray();
+    }
+
+    private Snapshot build() {
+        final long[][] rows = {new long[1024], new long[1024]};
+        final int[] size = {0};
+        jdbc.query(LOAD_QUERY, (rs) -> {
+            if (size[0] == rows[0].length) {
+                rows[0] = Arrays.copyOf(rows[0], size[0] * 2);
+                rows[1] = Arrays.copyOf(rows[1], size[0] * 2);
+            }
+            rows[0][size[0]] = rs.getLong("user_id");
+            rows[1][size[0]] = rs.getLong("film_id");
+            size[0]++;
+        });
+        final int likes = size[0];
+        final long[] userColumn = rows[0];
+        final long[] filmColumn = rows[1];
+
+        final long[] filmIds = Arrays.stream(filmColumn, 0, likes).distinct().sorted().toArray();
+        final long[] userIds = Arrays.stream(userColumn, 0, likes).distinct().toArray();
+
+        // CSR, rows arrive ordered by user and film
+        final int[] userOffsets = new int[userIds.length + 1];
+        final int[] userFilms = new int[likes];
+        for (int i = 0, user = -1; i < likes; i++) {
+            if (i == 0 || userColumn[i] != userColumn[i - 1]) {
+                user++;
+                userOffsets[user] = i;
+            }
+            userFilms[i] = Arrays.binarySearch(filmIds, filmColumn[i]);
+        }
+        userOffsets[userIds.length] = likes;
+
+        // CSC by counting sort of the same entries
+        final int[] filmOffsets = new int[filmIds.length + 1];
+        for (int i = 0; i < likes; i++) {
+            filmOffsets[userFilms[i] + 1]++;
+        }
+        for (int film = 0; film < filmIds.length; film++) {
+            filmOffsets[film + 1] += filmOffsets[film];
+        }
+        final int[] filmUsers = new int[likes];
+        final int[] next = Arrays.copyOf(filmOffsets, filmIds.length);
+        for (int user = 0; user < userIds.length; user++) {
+            for (int i = userOffsets[user]; i < userOffsets[user + 1]; i++) {
+                filmUsers[next[userFilms[i]]++] = user;
+            }
+        }
+
+        final int[] neighborOffsets = new int[filmIds.length + 1];
+        int[] neighborFilms = new int[Math.max(16, likes)];
+        int[] neighborWeights = new int[neighborFilms.length];
+        int neighborCount = 0;
+        final int[] counts = new int[filmIds.length];
+        int[] touched = new int[16];
+        for (int film = 0; film < filmIds.length; film++) {
+            int touchedCount = 0;
+            for (int u = filmOffsets[film]; u < filmOffsets[film + 1]; u++) {
+                int user = filmUsers[u];
+                for (int i = userOffsets[user]; i < userOffsets[user + 1]; i++) {
+                    int other = userFilms[i];
+                    if (other == film) {
+                        continue;
+                    }
+                    if (counts[other]++ == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = other;
+                    }
+                }
+            }
+
+            // higher count first, then lower film id: the count goes into the high half of a sortable key
+            long[] ranked = new long[touchedCount];
+            for (int i = 0; i < touchedCount; i++) {
+                ranked[i] = ((long) (Integer.MAX_VALUE - counts[touched[i]]) << 32) | touched[i];
+                counts[touched[i]] = 0;
+            }
+            Arrays.sort(ranked);
+            int kept = Math.min(topK, touchedCount);
+            if (neighborCount + kept > neighborFilms.length) {
+                int capacity = Math.max(neighborFilms.length * 2, neighborCount + kept);
+                neighborFilms = Arrays.copyOf(neighborFilms, capacity);
+                neighborWeights = Arrays.copyOf(neighborWeights, capacity);
+            }
+            for (int i = 0; i < kept; i++) {
+                neighborFilms[neighborCount] = (int) ranked[i];
+                neighborWeights[neighborCount] = Integer.MAX_VALUE - (int) (ranked[i] >>> 32);
+                neighborCount++;
+            }
+            neighborOffsets[film + 1] = neighborCount;
+        }
+
+        return new Snapshot(filmIds, userIds, userOffsets, userFilms, neighborOffsets,
+                Arrays.copyOf(neighborFilms, neighborCount), Arrays.copyOf(neighborWeights, neighborCount));
+    }
+
+    private record Snapshot(long[] filmIds, long[] userIds, int[] userOffsets, int[] userFilms,
+                            int[] neighborOffsets, int[] neighborFilms, int[] neighborWeights) {
+    }
+}
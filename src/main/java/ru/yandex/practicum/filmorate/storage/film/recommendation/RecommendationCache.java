@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate.storage.film.recommendation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsProvider;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Recommended film ids per user. Every entry remembers its neighborhood (the films the user liked and the films
+// recommended to them), a like on any of those films marks the entry stale instead of dropping it, so it can
+// still be served while it is recomputed. A list computed while its user was invalidated is not stored, the
+// per-user version catches that: a load registers a version, an invalidation drops it, so versions are only kept
+// for cached users and running loads. Bounded by a CLOCK queue like the other caches.
+@Component
+public class RecommendationCache implements CacheStatsProvider {
+    private static final long ENTRY_BYTES = 96;
+    private static final long ID_BYTES = 24;
+
+    private final int maxSize;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> usersByFilm = new ConcurrentHashMap<>();
+    private final Queue<Long> clock = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong nextVersion = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RecommendationCache(@Value("${filmorate.cache.recommendations.max-size:10000}") int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Entry get(Long userId, long now) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        entry.lastAccess = now;
+        hits.increment();
+        return entry;
+    }
+
+    public long version(Long userId) {
+        return versions.computeIfAbsent(userId, id -> nextVersion.incrementAndGet());
+    }
+
+    // called once a load is over, a version that did not end up with an entry is dropped
+    public synchronized void release(Long userId, long loadVersion) {
+        if (!entries.containsKey(userId)) {
+            versions.remove(userId, loadVersion);
+        }
+    }
+
+    public void put(Long userId, List<Long> filmIds, Collection<Long> likedFilmIds, long computedAt, long loadVersion) {
+        final Entry entry = new Entry(List.copyOf(filmIds), Set.copyOf(likedFilmIds), computedAt);
+        synchronized (this) {
+            Long version = versions.get(userId);
+            if (version == null || version != loadVersion) {
+                return;
+            }
+            Entry previous = entries.put(userId, entry);
+            if (previous == null) {
+                clock.offer(userId);
+            } else {
+                entry.lastAccess = previous.lastAccess;
+                unindex(userId, previous);
+            }
+            entry.filmIds.forEach(filmId -> index(userId, filmId));
+            entry.likedFilmIds.forEach(filmId -> index(userId, filmId));
+            evictIfFull();
+        }
+    }
+
+    public synchronized void evict(Long userId) {
+        versions.remove(userId);
+        Entry entry = entries.remove(userId);
+        if (entry != null) {
+            unindex(userId, entry);
+        }
+    }
+
+    public synchronized void invalidateFilm(Long filmId) {
+        Set<Long> userIds = usersByFilm.get(filmId);
+        if (userIds != null) {
+            userIds.forEach(userId -> {
+                versions.remove(userId);
+                Entry entry = entries.get(userId);
+                if (entry != null) {
+                    entry.stale = true;
+                }
+            });
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.values().forEach(entry -> entry.stale = true);
+    }
+
+    // users seen since activeSince whose entry is stale or was computed before refreshBefore
+    public List<Long> findRefreshCandidates(long activeSince, long refreshBefore) {
+        return entries.entrySet().stream()
+                .filter(entry -> entry.getValue().lastAccess >= activeSince)
+                .filter(entry -> entry.getValue().stale || entry.getValue().computedAt < refreshBefore)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long memoryBytes = entries.values().stream()
+                .mapToLong(entry -> ENTRY_BYTES + ID_BYTES * (entry.filmIds.size() + entry.likedFilmIds.size()))
+                .sum();
+        return new CacheStats("recommendations", hits.sum(), misses.sum(), evictions.sum(), entries.size(), maxSize, memoryBytes);
+    }
+
+    private void evictIfFull() {
+        while (entries.size() > maxSize) {
+            Long userId = clock.poll();
+            if (userId == null) {
+                return;
+            }
+            Entry entry = entries.get(userId);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(userId);
+                continue;
+            }
+            if (entries.remove(userId, entry)) {
+                versions.remove(userId);
+                unindex(userId, entry);
+                evictions.increment();
+            }
+        }
+    }
+
+    private void index(Long userId, Long filmId) {
+        usersByFilm.computeIfAbsent(filmId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+    }
+
+    private void unindex(Long userId, Entry entry) {
+        entry.filmIds.forEach(filmId -> unindex(userId, filmId));
+        entry.likedFilmIds.forEach(filmId -> unindex(userId, filmId));
+    }
+
+    private void unindex(Long userId, Long filmId) {
+        usersByFilm.computeIfPresent(filmId, (id, userIds) -> {
+            userIds.remove(userId);
+            return userIds.isEmpty() ? null : userIds;
+        });
+    }
+
+    public static class Entry {
+        private final List<Long> filmIds;
+        private final Set<Long> likedFilmIds;
+        private final long computedAt;
+        private volatile boolean stale;
+        private volatile boolean referenced;
+        private volatile long lastAccess;
+
+        Entry(List<Long> filmIds, Set<Long> likedFilmIds, long computedAt) {
+            this.filmIds = filmIds;
+            this.likedFilmIds = likedFilmIds;
+            this.computedAt = computedAt;
+            this.lastAccess = computedAt;
+        }
+
+        public List<Long> getFilmIds() {
+            return filmIds;
+        }
+
+        public long getComputedAt() {
+            return computedAt;
+        }
+
+        public boolean isStale() {
+            return stale;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.storage.film.search;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+// Inverted index over film descriptions with term frequencies per film, ranked by BM25. The startup load
+// tokenizes the descriptions in parallel and fills concurrent postings, later changes are patched one film at a
+// time. The final score adds likeWeight * ln(1 + likes), so relevance and popularity are ranked in one pass.
+// A film matches when its description has a query word as a whole word, a fuzzy query also accepts words a few
+// typos away. Without the index match() finds the same films in the database, fuzzy is then ignored as it is for
+// titles and directors.
+@Component
+public class DescriptionIndex {
+    private static final String LOAD_QUERY = "SELECT film_id, description FROM film";
+    private static final String SEARCH_QUERY = "SELECT film_id, description FROM film WHERE REPLACE(LOWER(description), 'ё', 'е') LIKE ?";
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final double k1;
+    private final double b;
+    private final double likeWeight;
+    private final Map<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, List<String>> termsByFilm = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long totalLength;
+
+    public DescriptionIndex(JdbcTemplate jdbc,
+                            @Value("${filmorate.search.description.enabled:true}") boolean enabled,
+                            @Value("${filmorate.search.description.k1:1.2}") double k1,
+                            @Value("${filmorate.search.description.b:0.75}") double b,
+                            @Value("${filmorate.search.description.like-weight:1.0}") double likeWeight) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.k1 = k1;
+        this.b = b;
+        this.likeWeight = likeWeight;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        final Map<Long, String> descriptions = new HashMap<>();
+        jdbc.query(LOAD_QUERY, (rs) -> {
+            descriptions.put(rs.getLong("film_id"), rs.getString("description"));
+        });
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            termsByFilm.clear();
+            descriptions.entrySet().parallelStream().forEach(description -> {
+                List<String> terms = FilmSearchIndex.tokenize(FilmSearchIndex.normalize(description.getValue()));
+                termsByFilm.put(description.getKey(), terms);
+                countTerms(terms).forEach((term, frequency) -> postings
+                        .computeIfAbsent(term, key -> new ConcurrentHashMap<>())
+                        .put(description.getKey(), frequency));
+            });
+            totalLength = termsByFilm.values().stream().mapToLong(List::size).sum();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void putFilm(Long filmId, String description) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unindex(filmId);
+            List<String> terms = FilmSearchIndex.tokenize(FilmSearchIndex.normalize(description));
+            termsByFilm.put(filmId, terms);
+            totalLength += terms.size();
+            countTerms(terms).forEach((term, frequency) -> postings
+                    .computeIfAbsent(term, key -> new ConcurrentHashMap<>())
+                    .put(filmId, frequency));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unindex(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // films whose description contains a query word, together with the boosted films, best first. A boosted film
+    // (matched by title or director) gets the most any description can score, idf * (k1 + 1) per query word.
+    public List<Long> rank(String query, Collection<Long> boosted, ToLongFunction<Long> likes, boolean fuzzy) {
+        final List<String> words = wordsOf(query);
+        lock.readLock().lock();
+        try {
+            final int films = termsByFilm.size();
+            final double averageLength = films == 0 ? 0 : (double) totalLength / films;
+            final Map<Long, Double> scores = new HashMap<>();
+            double boost = 0;
+            for (String word : words) {
+                Map<Long, Integer> frequencies = fuzzy ? similarFrequencies(word) : postings.getOrDefault(word, Map.of());
+                double idf = Math.log(1 + (films - frequencies.size() + 0.5) / (frequencies.size() + 0.5));
+                boost += idf * (k1 + 1);
+                frequencies.forEach((filmId, frequency) -> {
+                    double norm = k1 * (1 - b + b * termsByFilm.get(filmId).size() / averageLength);
+                    scores.merge(filmId, idf * frequency * (k1 + 1) / (frequency + norm), Double::sum);
+                });
+            }
+            for (Long filmId : boosted) {
+                scores.merge(filmId, boost, Double::sum);
+            }
+            scores.replaceAll((filmId, score) -> score + likeWeight * Math.log1p(likes.applyAsLong(filmId)));
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the films rank() matches by description, read from the database: LIKE finds the candidates, whole words are
+    // then checked the way the index splits them
+    public Set<Long> match(String query) {
+        final Set<Long> filmIds = new HashSet<>();
+        for (String word : wordsOf(query)) {
+            jdbc.query(SEARCH_QUERY, (rs) -> {
+                if (FilmSearchIndex.tokenize(FilmSearchIndex.normalize(rs.getString("description"))).contains(word)) {
+                    filmIds.add(rs.getLong("film_id"));
+                }
+            }, "%" + word + "%");
+        }
+        return filmIds;
+    }
+
+    private static List<String> wordsOf(String query) {
+        return new ArrayList<>(new LinkedHashSet<>(FilmSearchIndex.tokenize(FilmSearchIndex.normalize(query))));
+    }
+
+    // frequencies of every term within the typo bound of the word, summed per film as if they were one term;
+    // only the term dictionary is scanned
+    private Map<Long, Integer> similarFrequencies(String word) {
+        final int bound = FilmSearchIndex.maxEdits(word.length());
+        if (bound == 0) {
+            return postings.getOrDefault(word, Map.of());
+        }
+        final Map<Long, Integer> frequencies = new HashMap<>();
+        postings.forEach((term, termFrequencies) -> {
+            if (FilmSearchIndex.editDistance(word, term, bound) <= bound) {
+                termFrequencies.forEach((filmId, frequency) -> frequencies.merge(filmId, frequency, Integer::sum));
+            }
+        });
+        return frequencies;
+    }
+
+    private void unindex(Long filmId) {
+        List<String> previous = termsByFilm.remove(filmId);
+        if (previous == null) {
+            return;
+        }
+        totalLength -= previous.size();
+        countTerms(previous).keySet().forEach(term -> {
+            Map<Long, Integer> frequencies = postings.get(term);
+            if (frequencies != null && frequencies.remove(filmId) != null && frequencies.isEmpty()) {
+                postings.remove(term);
+            }
+        });
+    }
+
+    private static Map<String, Integer> countTerms(List<String> terms) {
+        final Map<String, Integer> frequencies = new HashMap<>();
+        terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        return frequencies;
+    }
+}
@@ -0,0 +1,381 @@
+package ru.yandex.practicum.filmorate.storage.film.search;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index from words of film titles and director names to ids. A query keeps the LIKE '%query%' meaning:
+// films are looked up through the index terms containing the longest query word and then checked against the
+// whole query, so only the term dictionary is scanned, never the films. A fuzzy query also accepts every query
+// word within a few typos of a term: terms sharing enough trigrams with the word are the candidates, an edit
+// changes at most three trigrams, and the candidates are checked with an edit distance cut off at the bound.
+@Component
+public class FilmSearchIndex {
+    private static final String LOAD_FILMS_QUERY = "SELECT film_id, name FROM film";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT director_id, name FROM director";
+    private static final String LOAD_FILM_DIRECTORS_QUERY = "SELECT film_id, director_id FROM film_director";
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final TextField titles = new TextField();
+    private final TextField directorNames = new TextField();
+    private final Map<Long, Set<Long>> directorsByFilm = new HashMap<>();
+    private final Map<Long, Set<Long>> filmsByDirector = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FilmSearchIndex(JdbcTemplate jdbc,
+                           @Value("${filmorate.search.index.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            directorsByFilm.clear();
+            filmsByDirector.clear();
+            jdbc.query(LOAD_FILMS_QUERY, (rs) -> {
+                titles.put(rs.getLong("film_id"), rs.getString("name"));
+            });
+            jdbc.query(LOAD_DIRECTORS_QUERY, (rs) -> {
+                directorNames.put(rs.getLong("director_id"), rs.getString("name"));
+            });
+            jdbc.query(LOAD_FILM_DIRECTORS_QUERY, (rs) -> {
+                link(rs.getLong("film_id"), rs.getLong("director_id"));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void putFilm(Film film) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.put(film.getId(), film.getName());
+            unlinkFilm(film.getId());
+            if (film.getDirectors() != null) {
+                film.getDirectors().forEach(director -> link(film.getId(), director.getId()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.remove(filmId);
+            unlinkFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(Director director) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            directorNames.put(director.getId(), director.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(Long directorId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            directorNames.remove(directorId);
+            Set<Long> filmIds = filmsByDirector.remove(directorId);
+            if (filmIds != null) {
+                filmIds.forEach(filmId -> {
+                    Set<Long> directorIds = directorsByFilm.get(filmId);
+                    directorIds.remove(directorId);
+                    if (directorIds.isEmpty()) {
+                        directorsByFilm.remove(filmId);
+                    }
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Set<Long> search(String query, boolean byTitle, boolean byDirector) {
+        return search(query, byTitle, byDirector, false);
+    }
+
+    public Set<Long> search(String query, boolean byTitle, boolean byDirector, boolean fuzzy) {
+        final String needle = normalize(query);
+        lock.readLock().lock();
+        try {
+            final Set<Long> filmIds = new HashSet<>();
+            if (byTitle) {
+                filmIds.addAll(fuzzy ? titles.matchFuzzy(needle) : titles.match(needle));
+            }
+            if (byDirector) {
+                for (Long directorId : fuzzy ? directorNames.matchFuzzy(needle) : directorNames.match(needle)) {
+                    filmIds.addAll(filmsByDirector.getOrDefault(directorId, Set.of()));
+                }
+            }
+            return filmIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    // words are runs of letters or digits of any script, so Cyrillic and Latin split the same way
+    static List<String> tokenize(String normalized) {
+        final List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // typos allowed in a word of that length, short words must match exactly
+    static int maxEdits(int length) {
+        return length <= 3 ? 0 : length <= 7 ? 1 : 2;
+    }
+
+    // trigrams of the word padded with a boundary mark on both sides, so the first and last letters count too
+    static Set<String> trigrams(String word) {
+        final String padded = "$" + word + "$";
+        final Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // Levenshtein distance if it is at most bound, otherwise bound + 1; only the diagonal band of width
+    // 2 * bound + 1 is filled and the loop stops once a whole row exceeds the bound
+    static int editDistance(String first, String second, int bound) {
+        if (Math.abs(first.length() - second.length()) > bound) {
+            return bound + 1;
+        }
+        final int outside = bound + 1;
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j <= bound ? j : outside;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            int from = Math.max(1, i - bound);
+            int to = Math.min(second.length(), i + bound);
+            current[0] = i <= bound ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            int rowMinimum = current[0];
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                int distance = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(distance, outside);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (to < second.length()) {
+                current[to + 1] = outside;
+            }
+            if (rowMinimum > bound) {
+                return outside;
+            }
+            int[] swapped = previous;
+            previous = current;
+            current = swapped;
+        }
+        return previous[second.length()];
+    }
+
+    private void link(Long filmId, Long directorId) {
+        directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+        filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+    }
+
+    private void unlinkFilm(Long filmId) {
+        Set<Long> directorIds = directorsByFilm.remove(filmId);
+        if (directorIds != null) {
+            directorIds.forEach(directorId -> {
+                Set<Long> filmIds = filmsByDirector.get(directorId);
+                filmIds.remove(filmId);
+                if (filmIds.isEmpty()) {
+                    filmsByDirector.remove(directorId);
+                }
+            });
+        }
+    }
+
+    // normalized texts by id, postings from each word to the ids whose text contains it and from each trigram
+    // to the words containing it
+    private static class TextField {
+        private final Map<Long, String> texts = new HashMap<>();
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+        private final Map<String, Set<String>> termsByTrigram = new HashMap<>();
+
+        void put(Long id, String text) {
+            remove(id);
+            String normalized = normalize(text);
+            texts.put(id, normalized);
+            tokenize(normalized).forEach(term -> postings.computeIfAbsent(term, key -> {
+                trigrams(key).forEach(trigram -> termsByTrigram.computeIfAbsent(trigram, t -> new HashSet<>()).add(key));
+                return new HashSet<>();
+            }).add(id));
+        }
+
+        void remove(Long id) {
+            String previous = texts.remove(id);
+            if (previous != null) {
+                tokenize(previous).forEach(term -> {
+                    Set<Long> ids = postings.get(term);
+                    if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                        postings.remove(term);
+                        trigrams(term).forEach(trigram -> {
+                            Set<String> terms = termsByTrigram.get(trigram);
+                            if (terms != null && terms.remove(term) && terms.isEmpty()) {
+                                termsByTrigram.remove(trigram);
+                            }
+                        });
+                    }
+                });
+            }
+        }
+
+        void clear() {
+            texts.clear();
+            postings.clear();
+            termsByTrigram.clear();
+        }
+
+        Set<Long> match(String needle) {
+            final List<String> words = tokenize(needle);
+            if (words.isEmpty()) {
+                // nothing to look up by, e.g. an empty query or only punctuation
+                return verify(texts.keySet(), needle);
+            }
+            String longest = words.get(0);
+            for (String word : words) {
+                if (word.length() > longest.length()) {
+                    longest = word;
+                }
+            }
+            final Set<Long> candidates = new HashSet<>();
+            for (Map.Entry<String, Set<Long>> posting : postings.entrySet()) {
+                if (posting.getKey().contains(longest)) {
+                    candidates.addAll(posting.getValue());
+                }
+            }
+            return verify(candidates, needle);
+        }
+
+        // the exact matches, and the texts where every query word is inside some word or a few typos away from it
+        Set<Long> matchFuzzy(String needle) {
+            final Set<Long> matched = match(needle);
+            Set<Long> common = null;
+            for (String word : tokenize(needle)) {
+                final Set<Long> ids = new HashSet<>();
+                for (String term : similarTerms(word)) {
+                    ids.addAll(postings.get(term));
+                }
+                if (common == null) {
+                    common = ids;
+                } else {
+                    common.retainAll(ids);
+                }
+                if (common.isEmpty()) {
+                    return matched;
+                }
+            }
+            if (common != null) {
+                matched.addAll(common);
+            }
+            return matched;
+        }
+
+        private Set<String> similarTerms(String word) {
+            final Set<String> similar = new HashSet<>();
+            for (String term : postings.keySet()) {
+                if (term.contains(word)) {
+                    similar.add(term);
+                }
+            }
+            final int bound = maxEdits(word.length());
+            if (bound == 0) {
+                return similar;
+            }
+            final Set<String> trigrams = trigrams(word);
+            final int required = trigrams.size() - 3 * bound;
+            final Iterable<String> candidates;
+            if (required > 0) {
+                final Map<String, Integer> shared = new HashMap<>();
+                for (String trigram : trigrams) {
+                    termsByTrigram.getOrDefault(trigram, Set.of()).forEach(term -> shared.merge(term, 1, Integer::sum));
+                }
+                shared.values().removeIf(count -> count < required);
+                candidates = shared.keySet();
+            } else {
+                // repeated letters leave too few distinct trigrams to filter by
+                candidates = postings.keySet();
+            }
+            for (String term : candidates) {
+                if (editDistance(word, term, bound) <= bound) {
+                    similar.add(term);
+                }
+            }
+            return similar;
+        }
+
+        private Set<Long> verify(Set<Long> candidates, String needle) {
+            final Set<Long> matched = new HashSet<>();
+            for (Long id : candidates) {
+                if (texts.get(id).contains(needle)) {
+                    matched.add(id);
+                }
+            }
+            return matched;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package ru.yandex.practicum.filmorate.storage.film.search;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.types.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+// Autocomplete over film titles and director names, scored by likes (a director by the likes of their films).
+// The snapshot is a flattened trie: one reference (entry, offset) per word start, sorted by the text from there,
+// so a prefix is a contiguous range found by binary search. Ranges of prefixes up to CACHED_DEPTH characters can
+// be huge, their top-K entries are computed at build time. Changes between rebuilds go to a small delta that
+// overrides the snapshot; the scheduled rebuild also picks up new like counts. A delta entry is normalized once
+// when it is written, a query reads the delta in place and skips the snapshot entries it overrides.
+@Component
+public class SuggestionIndex implements CacheStatsProvider {
+    private static final String LOAD_FILMS_QUERY = "SELECT f.film_id, f.name, COALESCE(c.likes, 0) AS likes FROM film AS f LEFT JOIN film_like_count AS c ON f.film_id = c.film_id";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT d.director_id, d.name, COALESCE(SUM(c.likes), 0) AS likes FROM director AS d LEFT JOIN film_director AS fd ON d.director_id = fd.director_id LEFT JOIN film_like_count AS c ON fd.film_id = c.film_id GROUP BY d.director_id, d.name";
+    private static final int CACHED_DEPTH = 3;
+    private static final long STRING_BYTES = 40;
+    private static final long PREFIX_BYTES = 64;
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final int topK;
+    private final int maxDelta;
+    private final long rebuildIntervalMillis;
+    private final Map<Key, Change> delta = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long builtAt;
+
+    public SuggestionIndex(JdbcTemplate jdbc,
+                           @Value("${filmorate.suggest.enabled:true}") boolean enabled,
+                           @Value("${filmorate.suggest.top-k:10}") int topK,
+                           @Value("${filmorate.suggest.max-delta:1000}") int maxDelta,
+                           @Value("${filmorate.suggest.rebuild-interval:PT5M}") Duration rebuildInterval) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.maxDelta = maxDelta;
+        this.rebuildIntervalMillis = rebuildInterval.toMillis();
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        // changes made from here on may be missing from the loaded rows, they stay in the delta
+        final long startedAt = sequence.get();
+        final List<Pending> loaded = new ArrayList<>();
+        jdbc.query(LOAD_FILMS_QUERY, (rs) -> {
+            loaded.add(new Pending(SuggestionType.FILM, rs.getLong("film_id"), rs.getString("name"),
+                    rs.getLong("likes"), 0));
+        });
+        jdbc.query(LOAD_DIRECTORS_QUERY, (rs) -> {
+            loaded.add(new Pending(SuggestionType.DIRECTOR, rs.getLong("director_id"), rs.getString("name"),
+                    rs.getLong("likes"), 0));
+        });
+        snapshot = Snapshot.build(loaded, topK);
+        delta.values().removeIf(change -> change.pending().sequence() <= startedAt);
+        builtAt = System.currentTimeMillis();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean shouldRebuild(long now) {
+        return enabled && (delta.size() > maxDelta || now - builtAt > rebuildIntervalMillis);
+    }
+
+    public void putFilm(Long filmId, String name, long likes) {
+        put(SuggestionType.FILM, filmId, name, likes);
+    }
+
+    public void putDirector(Long directorId, String name) {
+        put(SuggestionType.DIRECTOR, directorId, name, -1);
+    }
+
+    public void removeFilm(Long filmId) {
+        put(SuggestionType.FILM, filmId, null, 0);
+    }
+
+    public void removeDirector(Long directorId) {
+        put(SuggestionType.DIRECTOR, directorId, null, 0);
+    }
+
+    public List<Suggestion> suggest(String prefix, int count) {
+        final String needle = FilmSearchIndex.normalize(prefix).strip();
+        if (!enabled || needle.isEmpty() || count <= 0) {
+            return List.of();
+        }
+        final Snapshot current = snapshot;
+        final IntPredicate overridden = delta.isEmpty() ? Snapshot.NONE : entry -> delta.containsKey(current.keyOf(entry));
+        final List<Pending> found = new ArrayList<>();
+
+        int[] cached = count <= topK ? current.topByPrefix.get(needle) : null;
+        if (cached != null) {
+            hits.increment();
+            for (int entry : cached) {
+                if (!overridden.test(entry)) {
+                    found.add(current.pending(entry));
+                }
+            }
+            // overridden entries may leave a full list short, then the range itself has to be read
+            if (found.size() < count && cached.length == topK) {
+                found.clear();
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            for (int entry : current.top(needle, count, overridden)) {
+                found.add(current.pending(entry));
+            }
+        }
+        for (Change change : delta.values()) {
+            if (change.pending().name() != null && startsWordWith(change.normalized(), change.wordStarts(), needle)) {
+                found.add(change.pending());
+            }
+        }
+
+        return found.stream()
+                .sorted(Pending.ORDER)
+                .limit(count)
+                .map(pending -> new Suggestion(pending.type(), pending.id(), pending.name()))
+                .toList();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        final Snapshot current = snapshot;
+        return new CacheStats("suggestions", hits.sum(), misses.sum(), 0,
+                current.ids.length + delta.size(), current.ids.length + maxDelta, current.memoryBytes());
+    }
+
+    private void put(SuggestionType type, Long id, String name, long likes) {
+        if (!enabled) {
+            return;
+        }
+        delta.compute(new Key(type, id), (key, previous) -> {
+            long score = likes;
+            if (score < 0) {
+                score = previous != null ? previous.pending().likes() : snapshot.likesOf(key);
+            }
+            return Change.of(new Pending(type, id, name, score, sequence.incrementAndGet()));
+        });
+    }
+
+    private static boolean startsWordWith(String normalized, int[] wordStarts, String needle) {
+        for (int offset : wordStarts) {
+            if (normalized.startsWith(needle, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] wordStarts(String normalized) {
+        int[] starts = new int[4];
+        int count = 0;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1)))) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    private record Key(SuggestionType type, long id) {
+    }
+
+    // name is null for a removed entry
+    private record Pending(SuggestionType type, long id, String name, long likes, long sequence) {
+        static final Comparator<Pending> ORDER = Comparator.comparingLong((Pending pending) -> -pending.likes())
+                .thenComparing(Pending::type)
+                .thenComparingLong(Pending::id);
+    }
+
+    // a delta entry, its name normalized and split into word starts once when it is written
+    private record Change(Pending pending, String normalized, int[] wordStarts) {
+        static Change of(Pending pending) {
+            final String normalized = FilmSearchIndex.normalize(pending.name());
+            return new Change(pending, normalized, SuggestionIndex.wordStarts(normalized));
+        }
+    }
+
+    private static final class Snapshot {
+        static final IntPredicate NONE = entry -> false;
+        static final Snapshot EMPTY = build(List.of(), 0);
+
+        private final SuggestionType[] types;
+        private final long[] ids;
+        private final String[] names;
+        private final String[] normalized;
+        private final long[] likes;
+        // entry in the high half, offset of the word start in the low half
+        private final long[] refs;
+        private final Map<String, int[]> topByPrefix;
+        private final Map<Key, Integer> entryByKey;
+
+        private Snapshot(SuggestionType[] types, long[] ids, String[] names, String[] normalized, long[] likes,
+                         long[] refs, Map<String, int[]> topByPrefix, Map<Key, Integer> entryByKey) {
+            this.types = types;
+            this.ids = ids;
+            this.names = names;
+            this.normalized = normalized;
+            this.likes = likes;
+            this.refs = refs;
+            this.topByPrefix = topByPrefix;
+            this.entryByKey = entryByKey;
+        }
+
+        static Snapshot build(List<Pending> entries, int topK) {
+            final int size = entries.size();
+            final SuggestionType[] types = new SuggestionType[size];
+            final long[] ids = new long[size];
+            final String[] names = new String[size];
+            final String[] normalized = new String[size];
+            final long[] likes = new long[size];
+            final Map<Key, Integer> entryByKey = new HashMap<>();
+            final List<Long> refs = new ArrayList<>();
+            for (int entry = 0; entry < size; entry++) {
+                Pending pending = entries.get(entry);
+                types[entry] = pending.type();
+                ids[entry] = pending.id();
+                names[entry] = pending.name();
+                normalized[entry] = FilmSearchIndex.normalize(pending.name());
+                likes[entry] = pending.likes();
+                entryByKey.put(new Key(pending.type(), pending.id()), entry);
+                for (int offset : wordStarts(normalized[entry])) {
+                    refs.add(((long) entry << 32) | offset);
+                }
+            }
+            refs.sort((first, second) -> compareSuffixes(normalized, first, second));
+            final long[] sortedRefs = refs.stream().mapToLong(Long::longValue).toArray();
+
+            final Snapshot snapshot = new Snapshot(types, ids, names, normalized, likes, sortedRefs,
+                    new HashMap<>(), entryByKey);
+            for (int depth = 1; depth <= CACHED_DEPTH; depth++) {
+                int start = 0;
+                while (start < sortedRefs.length) {
+                    String prefix = snapshot.prefixOf(sortedRefs[start], depth);
+                    int end = start + 1;
+                    while (end < sortedRefs.length && prefix != null && prefix.equals(snapshot.prefixOf(sortedRefs[end], depth))) {
+                        end++;
+                    }
+                    if (prefix != null) {
+                        snapshot.topByPrefix.put(prefix, snapshot.top(start, end, topK, NONE));
+                    }
+                    start = end;
+                }
+            }
+            return snapshot;
+        }
+
+        Pending pending(int entry) {
+            return new Pending(types[entry], ids[entry], names[entry], likes[entry], 0);
+        }
+
+        long likesOf(Key key) {
+            Integer entry = entryByKey.get(key);
+            return entry == null ? 0 : likes[entry];
+        }
+
+        int[] top(String needle, int count, IntPredicate skipped) {
+            return top(lowerBound(needle, false), lowerBound(needle, true), count, skipped);
+        }
+
+        // best count distinct entries of refs[from, to) by likes, the skipped entries left out. A min-heap
+        // of the best so far: an entry seen twice either sits in the heap or already lost to its minimum.
+        int[] top(int from, int to, int count, IntPredicate skipped) {
+            final int[] heap = new int[Math.max(count, 0)];
+            int size = 0;
+            for (int i = from; i < to && count > 0; i++) {
+                int entry = (int) (refs[i] >>> 32);
+                if (size == count && !better(entry, heap[0])) {
+                    continue;
+                }
+                if (contains(heap, size, entry) || skipped.test(entry)) {
+                    continue;
+                }
+                if (size < count) {
+                    heap[size] = entry;
+                    siftUp(heap, size++);
+                } else {
+                    heap[0] = entry;
+                    siftDown(heap, size);
+                }
+            }
+            final int[] top = new int[size];
+            while (size > 0) {
+                top[size - 1] = heap[0];
+                heap[0] = heap[--size];
+                siftDown(heap, size);
+            }
+            return top;
+        }
+
+        Key keyOf(int entry) {
+            return new Key(types[entry], ids[entry]);
+        }
+
+        long memoryBytes() {
+            long bytes = 8L * refs.length + 8L * likes.length + 8L * ids.length + 4L * types.length;
+            for (int entry = 0; entry < names.length; entry++) {
+                bytes += STRING_BYTES + 2L * names[entry].length();
+                if (normalized[entry] != names[entry]) {
+                    bytes += STRING_BYTES + 2L * normalized[entry].length();
+                }
+            }
+            for (Map.Entry<String, int[]> prefix : topByPrefix.entrySet()) {
+                bytes += PREFIX_BYTES + 2L * prefix.getKey().length() + 4L * prefix.getValue().length;
+            }
+            return bytes + PREFIX_BYTES * entryByKey.size();
+        }
+
+        // the Pending.ORDER of two entries
+        private boolean better(int entry, int other) {
+            if (likes[entry] != likes[other]) {
+                return likes[entry] > likes[other];
+            }
+            if (types[entry] != types[other]) {
+                return types[entry].compareTo(types[other]) < 0;
+            }
+            return ids[entry] < ids[other];
+        }
+
+        private void siftUp(int[] heap, int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!better(heap[parent], heap[index])) {
+                    return;
+                }
+                swap(heap, parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int size) {
+            int index = 0;
+            while (2 * index + 1 < size) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && better(heap[child], heap[child + 1])) {
+                    child++;
+                }
+                if (!better(heap[index], heap[child])) {
+                    return;
+                }
+                swap(heap, index, child);
+                index = child;
+            }
+        }
+
+        private static void swap(int[] heap, int first, int second) {
+            int swapped = heap[first];
+            heap[first] = heap[second];
+            heap[second] = swapped;
+        }
+
+        private static boolean contains(int[] heap, int size, int entry) {
+            for (int i = 0; i < size; i++) {
+                if (heap[i] == entry) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String prefixOf(long ref, int depth) {
+            String text = normalized[(int) (ref >>> 32)];
+            int offset = (int) ref;
+            return text.length() - offset < depth ? null : text.substring(offset, offset + depth);
+        }
+
+        // first ref whose text starts at or after the needle, or past the needle when upper is set
+        private int lowerBound(String needle, boolean upper) {
+            int low = 0;
+            int high = refs.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int compared = comparePrefix(refs[middle], needle);
+                if (compared < 0 || (upper && compared == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // the text at ref cut to the needle's length, compared with the needle
+        private int comparePrefix(long ref, String needle) {
+            String text = normalized[(int) (ref >>> 32)];
+            int offset = (int) ref;
+            int length = Math.min(text.length() - offset, needle.length());
+            for (int i = 0; i < length; i++) {
+                int compared = Character.compare(text.charAt(offset + i), needle.charAt(i));
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return length < needle.length() ? -1 : 0;
+        }
+
+        private static int compareSuffixes(String[] normalized, long first, long second) {
+            String firstText = normalized[(int) (first >>> 32)];
+            String secondText = normalized[(int) (second >>> 32)];
+            int firstOffset = (int) first;
+            int secondOffset = (int) second;
+            int length = Math.min(firstText.length() - firstOffset, secondText.length() - secondOffset);
+            for (int i = 0; i < length; i++) {
+                int compared = Character.compare(firstText.charAt(firstOffset + i), secondText.charAt(secondOffset + i));
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return Integer.compare(firstText.length() - firstOffset, secondText.length() - secondOffset);
+        }
+    }
+}
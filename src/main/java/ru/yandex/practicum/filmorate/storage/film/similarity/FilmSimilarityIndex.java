@@ -0,0 +1,303 @@
+package ru.yandex.practicum.filmorate.storage.film.similarity;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// MinHash signatures of the liking users of every film, split into LSH bands: films sharing any band are the
+// candidates, so similar films are found without comparing all pairs. Candidates are ranked by exact Jaccard from
+// the like bitmaps when those are enabled, otherwise by the share of equal signature values. A new like only
+// lowers a minimum, an unlike may raise one, so then the film's signature is recomputed from its likers.
+@Component
+public class FilmSimilarityIndex {
+    private static final String LOAD_QUERY = "SELECT film_id, user_id FROM film_like ORDER BY film_id";
+    private static final String LOAD_FILM_QUERY = "SELECT user_id FROM film_like WHERE film_id = ?";
+    // fixed seed, signatures must not depend on the run
+    private static final long SEED = 0x5DEECE66DL;
+    // likers read outside of the lock are discarded this many times before they are read under it
+    private static final int REFRESH_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbc;
+    private final FilmLikeIndex likeIndex;
+    private final boolean enabled;
+    private final int bands;
+    private final int rows;
+    private final long[] multipliers;
+    private final long[] increments;
+    private final Map<Long, long[]> signatures = new HashMap<>();
+    private final List<Map<Long, Set<Long>>> buckets;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // bumped under the write lock on every change, so a refresh can tell whether its likers went stale
+    private volatile long generation = 0;
+
+    public FilmSimilarityIndex(JdbcTemplate jdbc,
+                               FilmLikeIndex likeIndex,
+                               @Value("${filmorate.similar.enabled:true}") boolean enabled,
+                               @Value("${filmorate.similar.bands:32}") int bands,
+                               @Value("${filmorate.similar.rows:4}") int rows) {
+        this.jdbc = jdbc;
+        this.likeIndex = likeIndex;
+        this.enabled = enabled;
+        this.bands = bands;
+        this.rows = rows;
+        this.multipliers = new long[bands * rows];
+        this.increments = new long[bands * rows];
+        Random random = new Random(SEED);
+        for (int i = 0; i < multipliers.length; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+        this.buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            signatures.clear();
+            buckets.forEach(Map::clear);
+            final Map<Long, long[]> loaded = new HashMap<>();
+            jdbc.query(LOAD_QUERY, (rs) -> {
+                long[] signature = loaded.computeIfAbsent(rs.getLong("film_id"), id -> emptySignature());
+                include(signature, rs.getLong("user_id"));
+            });
+            loaded.forEach(this::place);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addLike(long filmId, long userId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long[] current = signatures.get(filmId);
+            long[] signature = current == null ? emptySignature() : current.clone();
+            if (include(signature, userId)) {
+                place(filmId, signature);
+                generation++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId) {
+        refreshFilms(new long[]{filmId});
+    }
+
+    public void refreshFilms(long[] filmIds) {
+        if (!enabled || filmIds.length == 0) {
+            return;
+        }
+        // the likers are queried before the write lock is taken and are used only if nothing changed meanwhile
+        for (int attempt = 1; ; attempt++) {
+            final long startedAt = generation;
+            final List<long[]> likers = attempt < REFRESH_ATTEMPTS ? likersOf(filmIds) : null;
+            lock.writeLock().lock();
+            try {
+                if (likers != null && generation != startedAt) {
+                    continue;
+                }
+                final List<long[]> current = likers != null ? likers : likersOf(filmIds);
+                for (int i = 0; i < filmIds.length; i++) {
+                    refresh(filmIds[i], current.get(i));
+                }
+                generation++;
+                return;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            unplace(filmId);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // most similar films first, at most count of them
+    public List<Long> findSimilar(long filmId, int count) {
+        lock.readLock().lock();
+        try {
+            final long[] signature = signatures.get(filmId);
+            if (signature == null) {
+                return List.of();
+            }
+            final Set<Long> candidates = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                Set<Long> bucket = buckets.get(band).get(bandKey(signature, band));
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+            candidates.remove(filmId);
+
+            final List<Scored> scored = new ArrayList<>(candidates.size());
+            for (Long candidate : candidates) {
+                double similarity = likeIndex.isEnabled()
+                        ? jaccard(filmId, candidate)
+                        : estimate(signature, signatures.get(candidate));
+                if (similarity > 0) {
+                    scored.add(new Scored(candidate, similarity));
+                }
+            }
+            scored.sort((first, second) -> first.similarity() != second.similarity()
+                    ? Double.compare(second.similarity(), first.similarity())
+                    : Long.compare(first.filmId(), second.filmId()));
+            return scored.stream()
+                    .limit(count)
+                    .map(Scored::filmId)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] emptySignature() {
+        long[] signature = new long[bands * rows];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        return signature;
+    }
+
+    private boolean include(long[] signature, long userId) {
+        boolean changed = false;
+        for (int i = 0; i < signature.length; i++) {
+            long hash = hash(i, userId);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // a multiply-add per function, then the splitmix64 finalizer to spread consecutive user ids
+    private long hash(int function, long userId) {
+        long x = userId * multipliers[function] + increments[function];
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return (x ^ (x >>> 31)) >>> 1;
+    }
+
+    private long bandKey(long[] signature, int band) {
+        long key = 1125899906842597L;
+        for (int row = band * rows; row < (band + 1) * rows; row++) {
+            key = 31 * key + signature[row];
+        }
+        return key;
+    }
+
+    private void place(long filmId, long[] signature) {
+        final long[] previous = signatures.put(filmId, signature);
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(signature, band);
+            if (previous != null) {
+                long previousKey = bandKey(previous, band);
+                if (previousKey == key) {
+                    continue;
+                }
+                removeFromBucket(band, previousKey, filmId);
+            }
+            buckets.get(band).computeIfAbsent(key, k -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private void unplace(long filmId) {
+        final long[] previous = signatures.remove(filmId);
+        if (previous != null) {
+            for (int band = 0; band < bands; band++) {
+                removeFromBucket(band, bandKey(previous, band), filmId);
+            }
+        }
+    }
+
+    private void removeFromBucket(int band, long key, long filmId) {
+        Set<Long> bucket = buckets.get(band).get(key);
+        if (bucket != null && bucket.remove(filmId) && bucket.isEmpty()) {
+            buckets.get(band).remove(key);
+        }
+    }
+
+    private void refresh(long filmId, long[] users) {
+        if (users.length == 0) {
+            unplace(filmId);
+            return;
+        }
+        long[] signature = emptySignature();
+        for (long userId : users) {
+            include(signature, userId);
+        }
+        place(filmId, signature);
+    }
+
+    private List<long[]> likersOf(long[] filmIds) {
+        final List<long[]> likers = new ArrayList<>(filmIds.length);
+        for (long filmId : filmIds) {
+            likers.add(likersOf(filmId));
+        }
+        return likers;
+    }
+
+    private long[] likersOf(long filmId) {
+        if (likeIndex.isEnabled()) {
+            return likeIndex.getLikedUsers(filmId);
+        }
+        return jdbc.queryForList(LOAD_FILM_QUERY, Long.class, filmId).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private double jaccard(long filmId, long otherFilmId) {
+        int shared = likeIndex.countCommonLikers(filmId, otherFilmId);
+        int union = likeIndex.countLikes(filmId) + likeIndex.countLikes(otherFilmId) - shared;
+        return union == 0 ? 0 : (double) shared / union;
+    }
+
+    private double estimate(long[] signature, long[] other) {
+        int equal = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] == other[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / signature.length;
+    }
+
+    private record Scored(long filmId, double similarity) {
+    }
+}
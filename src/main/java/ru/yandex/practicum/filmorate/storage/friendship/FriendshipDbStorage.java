@@ -7,7 +7,11 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.friendship.mapper.FriendshipRowMapper;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Repository("friendshipDbStorage")
 @RequiredArgsConstructor
@@ -16,15 +20,39 @@ public class FriendshipDbStorage implements FriendshipStorage {
     private static final String CONFIRM_FRIEND_QUERY = "UPDATE user_friend SET friendship_status_id = 1 WHERE user_id = ? AND friend_id = ?";
     private static final String DELETE_FRIEND_QUERY = "DELETE FROM user_friend WHERE user_id = ? AND friend_id = ?";
     private static final String GET_FRIENDS_QUERY = "SELECT friend_id FROM user_friend WHERE user_id = ? AND friendship_status_id = 1";
+    private static final String GET_COMMON_FRIENDS_QUERY = "SELECT a.friend_id FROM user_friend AS a INNER JOIN user_friend AS b ON a.friend_id = b.friend_id WHERE a.user_id = ? AND a.friendship_status_id = 1 AND b.user_id = ? AND b.friendship_status_id = 1";
+    private static final String COUNT_FRIENDS_QUERY = "SELECT COUNT(*) FROM user_friend WHERE user_id = ? AND friendship_status_id = 1";
 
     private final JdbcTemplate jdbc;
     private final FriendshipRowMapper mapper;
+    private final FriendshipGraph graph;
 
     @Override
     public Collection<Long> getFriends(User user) {
+        if (graph.isEnabled()) {
+            return Arrays.stream(graph.getFriends(user.getId())).boxed().toList();
+        }
         return jdbc.query(GET_FRIENDS_QUERY, mapper, user.getId());
     }
 
+    @Override
+    public Set<Long> getCommonFriends(User user, User otherUser) {
+        if (graph.isEnabled()) {
+            return Arrays.stream(graph.getCommonFriends(user.getId(), otherUser.getId()))
+                    .boxed()
+                    .collect(Collectors.toSet());
+        }
+        return new HashSet<>(jdbc.query(GET_COMMON_FRIENDS_QUERY, mapper, user.getId(), otherUser.getId()));
+    }
+
+    @Override
+    public int countFriends(User user) {
+        if (graph.isEnabled()) {
+            return graph.countFriends(user.getId());
+        }
+        return jdbc.queryForObject(COUNT_FRIENDS_QUERY, Integer.class, user.getId());
+    }
+
     @Override
     public void addFriend(User user, User newFriend) {
         jdbc.update(ADD_FRIEND_QUERY,
@@ -38,15 +66,27 @@ public class FriendshipDbStorage implements FriendshipStorage {
         jdbc.update(ADD_FRIEND_QUERY,
                 newFriend.getId(),
                 user.getId());
+
+        if (graph.isEnabled()) {
+            graph.addEdge(user.getId(), newFriend.getId());
+            // the reverse row is (re)written as unconfirmed
+            graph.removeEdge(newFriend.getId(), user.getId());
+        }
     }
 
     @Override
     public void confirmFriend(User user, User newFriend) {
-        jdbc.update(CONFIRM_FRIEND_QUERY, user.getId(), newFriend.getId());
+        int confirmed = jdbc.update(CONFIRM_FRIEND_QUERY, user.getId(), newFriend.getId());
+        if (confirmed > 0 && graph.isEnabled()) {
+            graph.addEdge(user.getId(), newFriend.getId());
+        }
     }
 
     @Override
     public void deleteFriend(User user, User oldFriend) {
         jdbc.update(DELETE_FRIEND_QUERY, user.getId(), oldFriend.getId());
+        if (graph.isEnabled()) {
+            graph.removeEdge(user.getId(), oldFriend.getId());
+        }
     }
 }
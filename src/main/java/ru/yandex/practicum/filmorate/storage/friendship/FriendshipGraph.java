@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.storage.friendship;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Confirmed friendships (user_friend rows with status 1) as a sorted long[] of friend ids per user. Arrays are
+// never modified in place: writers replace them under the map's per-key lock, so readers need no locking.
+@Component
+public class FriendshipGraph {
+    private static final String LOAD_QUERY = "SELECT user_id, friend_id FROM user_friend WHERE friendship_status_id = 1 ORDER BY user_id, friend_id";
+    private static final long[] EMPTY = new long[0];
+    // above this size ratio galloping through the larger list beats a linear merge
+    private static final int GALLOP_RATIO = 16;
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final Map<Long, long[]> friendsByUser = new ConcurrentHashMap<>();
+
+    public FriendshipGraph(JdbcTemplate jdbc,
+                           @Value("${filmorate.friendship.graph.enabled:false}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        friendsByUser.clear();
+        final long[] current = {-1};
+        final long[][] buffer = {new long[16]};
+        final int[] size = {0};
+        jdbc.query(LOAD_QUERY, (rs) -> {
+            long userId = rs.getLong("user_id");
+            if (userId != current[0]) {
+                if (size[0] > 0) {
+                    friendsByUser.put(current[0], Arrays.copyOf(buffer[0], size[0]));
+                }
+                current[0] = userId;
+                size[0] = 0;
+            }
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+            }
+            buffer[0][size[0]++] = rs.getLong("friend_id");
+        });
+        if (size[0] > 0) {
+            friendsByUser.put(current[0], Arrays.copyOf(buffer[0], size[0]));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long[] getFriends(long userId) {
+        return friendsByUser.getOrDefault(userId, EMPTY);
+    }
+
+    public int countFriends(long userId) {
+        return getFriends(userId).length;
+    }
+
+    public void addEdge(long userId, long friendId) {
+        friendsByUser.compute(userId, (id, friends) -> {
+            long[] current = friends == null ? EMPTY : friends;
+            int index = Arrays.binarySearch(current, friendId);
+            if (index >= 0) {
+                return current;
+            }
+            int insertAt = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            return updated;
+        });
+    }
+
+    public void removeEdge(long userId, long friendId) {
+        friendsByUser.computeIfPresent(userId, (id, friends) -> without(friends, friendId));
+    }
+
+    public void removeUser(long userId) {
+        friendsByUser.remove(userId);
+        friendsByUser.replaceAll((id, friends) -> {
+            long[] updated = without(friends, userId);
+            return updated == null ? EMPTY : updated;
+        });
+    }
+
+    public long[] getCommonFriends(long userId, long otherUserId) {
+        long[] first = getFriends(userId);
+        long[] second = getFriends(otherUserId);
+        if (first.length > second.length) {
+            long[] swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first.length == 0) {
+            return EMPTY;
+        }
+        return (long) first.length * GALLOP_RATIO < second.length
+                ? gallopingIntersection(first, second)
+                : mergeIntersection(first, second);
+    }
+
+    static long[] mergeIntersection(long[] first, long[] second) {
+        long[] common = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    static long[] gallopingIntersection(long[] small, long[] large) {
+        long[] common = new long[small.length];
+        int size = 0;
+        int low = 0;
+        for (long value : small) {
+            int step = 1;
+            int high = low;
+            while (high < large.length && large[high] < value) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(large, low, Math.min(high + 1, large.length), value);
+            if (index >= 0) {
+                common[size++] = value;
+                low = index + 1;
+            } else {
+                low = -index - 1;
+            }
+            if (low >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    private long[] without(long[] friends, long friendId) {
+        int index = Arrays.binarySearch(friends, friendId);
+        if (index < 0) {
+            return friends;
+        }
+        if (friends.length == 1) {
+            return null;
+        }
+        long[] updated = new long[friends.length - 1];
+        System.arraycopy(friends, 0, updated, 0, index);
+        System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+        return updated;
+    }
+}
@@ -3,11 +3,25 @@ package ru.yandex.practicum.filmorate.storage.friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public interface FriendshipStorage {
 
     public Collection<Long> getFriends(User user);
 
+    default Set<Long> getCommonFriends(User user, User otherUser) {
+        final Set<Long> otherFriends = new HashSet<>(getFriends(otherUser));
+        return getFriends(user).stream()
+                .filter(otherFriends::contains)
+                .collect(Collectors.toSet());
+    }
+
+    default int countFriends(User user) {
+        return getFriends(user).size();
+    }
+
     public void addFriend(User user, User newFriend);
 
     public void confirmFriend(User user, User newFriend);
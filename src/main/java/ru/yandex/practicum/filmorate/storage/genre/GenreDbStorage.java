@@ -7,11 +7,11 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
 import ru.yandex.practicum.filmorate.storage.genre.mapper.GenreRowMapper;
 
 import java.util.Collection;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static java.util.function.UnaryOperator.identity;
@@ -21,9 +21,11 @@ import static java.util.function.UnaryOperator.identity;
 public class GenreDbStorage implements GenreStorage {
     private static final String FIND_ALL_QUERY = "SELECT genre_id, name FROM genre ORDER BY genre_id";
     private static final String FIND_BY_ID_QUERY = "SELECT genre_id, name FROM genre WHERE genre_id = ?";
+    private static final String LOAD_GENRES_QUERY = "SELECT fg.film_id, g.genre_id, g.name FROM film_genre AS fg INNER JOIN genre AS g ON fg.genre_id = g.genre_id WHERE fg.film_id = ANY(?) ORDER BY fg.genre_id";
 
     private final JdbcTemplate jdbc;
     private final GenreRowMapper mapper;
+    private final BatchLoader batchLoader;
 
     @Override
     public Genre findById(Integer id) {
@@ -44,14 +46,7 @@ public class GenreDbStorage implements GenreStorage {
     public void loadGenres(Collection<Film> films) {
         final Map<Long, Film> filmById = films.stream().collect(Collectors.toMap(Film::getId, identity()));
 
-        String filmsIds = films.stream()
-                .map(Film::getId)
-                .map(Objects::toString)
-                .collect(Collectors.joining(","));
-        final String loadGenresQuery = "SELECT fg.film_id, g.genre_id, g.name FROM film_genre AS fg INNER JOIN genre AS g ON fg.genre_id = g.genre_id WHERE fg.film_id IN (" +
-                filmsIds + ") ORDER BY fg.genre_id";
-
-        jdbc.query(loadGenresQuery, (rs) -> {
+        batchLoader.query(LOAD_GENRES_QUERY, "BIGINT", filmById.keySet(), (rs) -> {
             final Film film = filmById.get(rs.getLong("film_id"));
             Genre genre = mapper.mapRow(rs, 0);
             film.addGenre(genre);
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage.reference;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+// Genres and ratings are seeded by data.sql and are not edited through the API, so they are read once into
+// arrays of names indexed by id. Callers always get fresh Genre/Mpa objects, the snapshot itself is never shared.
+@Component
+public class ReferenceDataCache {
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final FilmCache filmCache;
+    private volatile Snapshot snapshot;
+
+    public ReferenceDataCache(@Qualifier("genreDbStorage") GenreStorage genreStorage,
+                              @Qualifier("mpaStorage") MpaStorage mpaStorage,
+                              FilmCache filmCache) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.filmCache = filmCache;
+    }
+
+    @PostConstruct
+    public synchronized void refresh() {
+        snapshot = new Snapshot(
+                namesById(genreStorage.findAll(), Genre::getId, Genre::getName),
+                namesById(mpaStorage.findAll(), Mpa::getId, Mpa::getName));
+        filmCache.invalidateAll();
+    }
+
+    public Genre findGenre(Integer id) {
+        String name = nameOf(snapshot().genreNames(), id);
+        if (name == null) {
+            throw new NotFoundException("Жанр с id = " + id + " не найден.");
+        }
+        return new Genre(id, name);
+    }
+
+    public List<Genre> findAllGenres() {
+        String[] names = snapshot().genreNames();
+        List<Genre> genres = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (names[id] != null) {
+                genres.add(new Genre(id, names[id]));
+            }
+        }
+        return genres;
+    }
+
+    public String getGenreName(Integer id) {
+        return nameOf(snapshot().genreNames(), id);
+    }
+
+    public Mpa findMpa(Integer id) {
+        String name = nameOf(snapshot().mpaNames(), id);
+        if (name == null) {
+            throw new NotFoundException("Рейтинг с id = " + id + " не найден.");
+        }
+        return new Mpa(id, name);
+    }
+
+    public List<Mpa> findAllMpa() {
+        String[] names = snapshot().mpaNames();
+        List<Mpa> ratings = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (names[id] != null) {
+                ratings.add(new Mpa(id, names[id]));
+            }
+        }
+        return ratings;
+    }
+
+    public String getMpaName(Integer id) {
+        return nameOf(snapshot().mpaNames(), id);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private <T> String[] namesById(Collection<T> items, Function<T, Integer> id, Function<T, String> name) {
+        int maxId = items.stream()
+                .mapToInt(id::apply)
+                .max()
+                .orElse(-1);
+        String[] names = new String[maxId + 1];
+        items.forEach(item -> names[id.apply(item)] = name.apply(item));
+        return names;
+    }
+
+    private String nameOf(String[] names, Integer id) {
+        if (id == null || id < 0 || id >= names.length) {
+            return null;
+        }
+        return names[id];
+    }
+
+    private record Snapshot(String[] genreNames, String[] mpaNames) {
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.cache.RequestIdentityMap;
 import ru.yandex.practicum.filmorate.storage.review.mapper.ReviewRowMapper;
 
 import java.sql.PreparedStatement;
@@ -16,11 +17,20 @@ import java.util.List;
 @Repository("reviewDbStorage")
 @RequiredArgsConstructor
 public class ReviewDBStorage implements ReviewStorage {
-    private static final String FIND_LIMITED_QUERY = "SELECT * FROM film_review ORDER BY useful desc limit ?";
+    private static final String FIND_LIMITED_QUERY = "SELECT * FROM film_review ORDER BY useful desc, review_id limit ?";
     private static final String FIND_LIMITED_BY_FILM_QUERY = """
             SELECT * FROM film_review
             WHERE film_id = ?
-            ORDER BY useful desc limit ?""";
+            ORDER BY useful desc, review_id limit ?""";
+    private static final String FIND_PAGE_AFTER_QUERY = """
+            SELECT * FROM film_review
+            WHERE (useful < ? OR (useful = ? AND review_id > ?))
+            ORDER BY useful desc, review_id limit ?""";
+    private static final String FIND_PAGE_AFTER_BY_FILM_QUERY = """
+            SELECT * FROM film_review
+            WHERE film_id = ?
+              AND (useful < ? OR (useful = ? AND review_id > ?))
+            ORDER BY useful desc, review_id limit ?""";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM film_review WHERE review_id = ?";
     private static final String INSERT_QUERY = """
             INSERT INTO film_review (film_id, user_id, content, useful, is_positive)
@@ -47,6 +57,7 @@ public class ReviewDBStorage implements ReviewStorage {
 
     private final JdbcTemplate jdbc;
     private final ReviewRowMapper mapper;
+    private final RequestIdentityMap identityMap;
 
     @Override
     public List<Review> findLimited(int count) {
@@ -58,8 +69,20 @@ public class ReviewDBStorage implements ReviewStorage {
         return jdbc.query(FIND_LIMITED_BY_FILM_QUERY, mapper, filmId, count);
     }
 
+    @Override
+    public List<Review> findPageAfter(Long filmId, int useful, long reviewId, int count) {
+        if (filmId == null) {
+            return jdbc.query(FIND_PAGE_AFTER_QUERY, mapper, useful, useful, reviewId, count);
+        }
+        return jdbc.query(FIND_PAGE_AFTER_BY_FILM_QUERY, mapper, filmId, useful, useful, reviewId, count);
+    }
+
     @Override
     public Review findById(long id) {
+        return identityMap.find(Review.class, id, () -> load(id));
+    }
+
+    private Review load(long id) {
         try {
             return jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, id);
         } catch (EmptyResultDataAccessException ignored) {
@@ -93,6 +116,7 @@ public class ReviewDBStorage implements ReviewStorage {
                 review.getContent(),
                 review.getIsPositive(),
                 review.getReviewId());
+        identityMap.evict(Review.class, review.getReviewId());
 
         return findById(review.getReviewId());
     }
@@ -100,6 +124,7 @@ public class ReviewDBStorage implements ReviewStorage {
     @Override
     public void delete(long id) {
         jdbc.update(DELETE_BY_ID_QUERY, id);
+        identityMap.evict(Review.class, id);
     }
 
     @Override
@@ -107,6 +132,7 @@ public class ReviewDBStorage implements ReviewStorage {
         jdbc.update(ADD_LIKE_QUERY, id, userId, like);
 
         jdbc.update(UPDATE_USEFUL_BY_ID_QUERY, id, id);
+        identityMap.evict(Review.class, id);
     }
 
     @Override
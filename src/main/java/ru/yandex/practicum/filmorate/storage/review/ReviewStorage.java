@@ -9,6 +9,8 @@ public interface ReviewStorage {
 
     public List<Review> findLimitedByFilm(long filmId, int count);
 
+    public List<Review> findPageAfter(Long filmId, int useful, long reviewId, int count);
+
     public Review findById(long id);
 
     public Review create(Review review);
@@ -6,7 +6,11 @@ import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component("inMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
@@ -49,6 +53,21 @@ public class InMemoryUserStorage implements UserStorage {
         return users.values();
     }
 
+    @Override
+    public List<User> findByIds(Collection<Long> ids) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .collect(Collectors.toSet());
+    }
+
     private long getNextId() {
         return ++userCounter;
     }
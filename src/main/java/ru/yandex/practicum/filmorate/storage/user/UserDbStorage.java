@@ -5,25 +5,55 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
+import ru.yandex.practicum.filmorate.storage.cache.RequestIdentityMap;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.film.popularity.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.recommendation.FilmRecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.film.similarity.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.storage.friendship.FriendshipGraph;
 import ru.yandex.practicum.filmorate.storage.user.mapper.UserRowMapper;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Repository("userDbStorage")
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
     private static final String FIND_ALL_QUERY = "SELECT u.user_id, u.email, u.login, u.name, u.birthday FROM users AS u";
+    private static final String FIND_PAGE_QUERY = "SELECT u.user_id, u.email, u.login, u.name, u.birthday FROM users AS u WHERE u.user_id > ? ORDER BY u.user_id LIMIT ?";
     private static final String FIND_BY_ID_QUERY = "SELECT u.user_id, u.email, u.login, u.name, u.birthday FROM users AS u WHERE u.user_id = ?";
     private static final String DELETE_BY_ID_QUERY = "DELETE FROM users WHERE user_id = ?";
+    private static final String FIND_LIKED_FILM_IDS_QUERY = "SELECT film_id FROM film_like WHERE user_id = ?";
+    private static final String DECREMENT_LIKE_COUNTS_QUERY = "UPDATE film_like_count SET likes = likes - 1 WHERE likes > 0 AND film_id IN (SELECT film_id FROM film_like WHERE user_id = ?)";
     private static final String UPDATE_BY_ID_QUERY = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE user_id = ?";
     private static final String INSERT_QUERY = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
+    private static final String FIND_BY_IDS_QUERY = "SELECT u.user_id, u.email, u.login, u.name, u.birthday FROM users AS u WHERE u.user_id = ANY(?)";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT user_id FROM users WHERE user_id = ANY(?)";
 
     private final JdbcTemplate jdbc;
     private final UserRowMapper mapper;
+    private final BatchLoader batchLoader;
+    private final RequestIdentityMap identityMap;
+    private final FriendshipGraph friendshipGraph;
+    private final FilmLikeIndex likeIndex;
+    private final FilmRecommendationEngine recommendationEngine;
+    private final FilmSimilarityIndex similarityIndex;
+    private final FilmPopularityIndex popularityIndex;
 
     @Override
     public User create(User user) {
@@ -52,17 +82,49 @@ public class UserDbStorage implements UserStorage {
                 user.getName(),
                 user.getBirthday(),
                 user.getId());
+        identityMap.evict(User.class, user.getId());
         return findById(user.getId());
     }
 
     @Override
+    @Transactional
     public User delete(User user) {
+        // the cascade drops the user's likes, so their counters go down in the same transaction
+        final List<Long> unlikedFilms = jdbc.queryForList(FIND_LIKED_FILM_IDS_QUERY, Long.class, user.getId());
+        jdbc.update(DECREMENT_LIKE_COUNTS_QUERY, user.getId());
         jdbc.update(DELETE_BY_ID_QUERY, user.getId());
+        identityMap.evict(User.class, user.getId());
+        afterCommit(() -> {
+            if (friendshipGraph.isEnabled()) {
+                friendshipGraph.removeUser(user.getId());
+            }
+            likeIndex.removeUser(user.getId());
+            similarityIndex.refreshFilms(unlikedFilms.stream().mapToLong(Long::longValue).toArray());
+            unlikedFilms.forEach(popularityIndex::removeLike);
+            recommendationEngine.markStale();
+        });
         return user;
     }
 
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     @Override
     public User findById(Long id) {
+        return identityMap.find(User.class, id, () -> load(id));
+    }
+
+    private User load(Long id) {
         try {
             User user = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, id);
             return user;
@@ -75,4 +137,32 @@ public class UserDbStorage implements UserStorage {
     public Collection<User> findAll() {
         return jdbc.query(FIND_ALL_QUERY, mapper);
     }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+    }
+
+    @Override
+    public List<User> findByIds(Collection<Long> ids) {
+        final Map<Long, User> userById = new HashMap<>();
+        batchLoader.query(FIND_BY_IDS_QUERY, "BIGINT", ids, (rs) -> {
+            User user = mapper.mapRow(rs, 0);
+            userById.put(user.getId(), user);
+        });
+
+        return ids.stream()
+                .map(userById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        final Set<Long> existingIds = new HashSet<>();
+        batchLoader.query(FIND_EXISTING_IDS_QUERY, "BIGINT", ids, (rs) -> {
+            existingIds.add(rs.getLong("user_id"));
+        });
+        return existingIds;
+    }
 }
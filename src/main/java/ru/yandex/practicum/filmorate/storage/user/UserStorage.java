@@ -3,6 +3,9 @@ package ru.yandex.practicum.filmorate.storage.user;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 
 public interface UserStorage {
     public User create(User user);
@@ -14,4 +17,16 @@ public interface UserStorage {
     public User findById(Long id);
 
     public Collection<User> findAll();
+
+    default List<User> findPage(long afterId, int limit) {
+        return findAll().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparingLong(User::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    public List<User> findByIds(Collection<Long> ids);
+
+    public Set<Long> findExistingIds(Collection<Long> ids);
 }
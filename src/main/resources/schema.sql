@@ -62,6 +62,15 @@ CREATE TABLE IF NOT EXISTS film_like (
     CONSTRAINT film_like_PK PRIMARY KEY (film_id, user_id)
 );
 
+CREATE TABLE IF NOT EXISTS film_like_count (
+    film_id BIGINT PRIMARY KEY,
+    likes INTEGER NOT NULL DEFAULT 0,
+    FOREIGN KEY (film_id) REFERENCES film(film_id) ON DELETE CASCADE,
+    CONSTRAINT non_negative_likes CHECK (likes >= 0)
+);
+
+CREATE INDEX IF NOT EXISTS film_like_count_likes_idx ON film_like_count (likes DESC, film_id);
+
 CREATE TABLE IF NOT EXISTS director (
     director_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR UNIQUE NOT NULL
@@ -86,6 +95,9 @@ CREATE TABLE IF NOT EXISTS film_review (
     FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
 );
 
+CREATE INDEX IF NOT EXISTS film_review_useful_idx ON film_review (useful DESC, review_id);
+CREATE INDEX IF NOT EXISTS film_review_film_useful_idx ON film_review (film_id, useful DESC, review_id);
+
 CREATE TABLE IF NOT EXISTS film_review_like (
     review_id BIGINT NOT NULL,
     user_id BIGINT NOT NULL,
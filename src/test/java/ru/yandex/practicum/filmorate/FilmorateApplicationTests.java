@@ -1,23 +1,68 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.controller.ReviewController;
+import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.model.types.Operation;
+import ru.yandex.practicum.filmorate.model.types.SuggestionType;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.service.FilmLikeBufferFlusher;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
+import ru.yandex.practicum.filmorate.storage.cache.RequestIdentityMap;
+import ru.yandex.practicum.filmorate.storage.director.DirectorCache;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.export.FilmExporter;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeBuffer;
+import ru.yandex.practicum.filmorate.storage.film.like.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.film.popularity.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.recommendation.RecommendationCache;
+import ru.yandex.practicum.filmorate.storage.film.search.DescriptionIndex;
+import ru.yandex.practicum.filmorate.storage.film.search.SuggestionIndex;
+import ru.yandex.practicum.filmorate.storage.film.similarity.FilmSimilarityIndex;
 import ru.yandex.practicum.filmorate.storage.friendship.FriendshipDbStorage;
+import ru.yandex.practicum.filmorate.storage.friendship.FriendshipGraph;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.review.ReviewDBStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,7 +78,20 @@ class FilmorateApplicationTests {
 	private final GenreDbStorage genreDbStorage;
 	private final FriendshipDbStorage friendshipDbStorage;
 	private final FilmDbStorage filmDbStorage;
+	private final FilmPopularityIndex popularityIndex;
 	private final UserDbStorage userDbStorage;
+	private final ReviewDBStorage reviewDbStorage;
+	private final ReferenceDataCache referenceDataCache;
+	private final FilmCache filmCache;
+	private final RequestIdentityMap identityMap;
+	private final PlatformTransactionManager transactionManager;
+	private final JdbcTemplate jdbcTemplate;
+	private final GenreService genreService;
+	private final MpaService mpaService;
+	private final DirectorService directorService;
+	private final ReviewService reviewService;
+	private final ObjectMapper objectMapper;
+	private final Validator validator;
 
 	@Test
 	public void testFindMpaById() {
@@ -63,6 +121,71 @@ class FilmorateApplicationTests {
 		assertEquals(6, genre.size());
 	}
 
+	@Test
+	public void testReferenceDataCacheMatchesDatabase() {
+		referenceDataCache.refresh();
+
+		assertEquals(genreDbStorage.findAll(), referenceDataCache.findAllGenres());
+		assertEquals(mpaDbStorage.findAll(), referenceDataCache.findAllMpa());
+		assertEquals(genreDbStorage.findById(2).getName(), referenceDataCache.findGenre(2).getName());
+		assertEquals(mpaDbStorage.findById(3).getName(), referenceDataCache.findMpa(3).getName());
+		assertThrows(NotFoundException.class, () -> referenceDataCache.findGenre(9999));
+	}
+
+	@Test
+	public void testLoadGenresForFilms() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Film film = filmDbStorage.create(new Film(1L, "With genres", mpa, Set.of(new Genre(1, null), new Genre(2, null)), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film loadedFilm = new Film(film.getId(), "With genres", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>());
+
+		genreDbStorage.loadGenres(List.of());
+		genreDbStorage.loadGenres(List.of(loadedFilm));
+
+		assertEquals(2, loadedFilm.getGenres().size());
+		assertEquals(2, film.getGenres().size());
+	}
+
+	@Test
+	public void testUpdateWritesGenreAndDirectorDiffs() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Director kept = directorDbStorage.create(new Director(1L, "Diff director 1"));
+		Director added = directorDbStorage.create(new Director(1L, "Diff director 2"));
+		Film film = filmDbStorage.create(new Film(1L, "With diffs", mpa, Set.of(new Genre(1, null), new Genre(2, null)), new HashSet<>(Set.of(kept)), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		film.setGenres(Set.of(new Genre(2, null), new Genre(3, null)));
+		film.setDirectors(Set.of(kept, added));
+		Film updated = filmDbStorage.update(film);
+
+		assertEquals(Set.of(2L, 3L), storedIds("SELECT genre_id FROM film_genre WHERE film_id = ?", film.getId()));
+		assertEquals(Set.of(kept.getId(), added.getId()), storedIds("SELECT director_id FROM film_director WHERE film_id = ?", film.getId()));
+		assertEquals(2, updated.getGenres().size());
+		assertEquals(2, updated.getDirectors().size());
+
+		filmDbStorage.update(film);
+
+		assertEquals(Set.of(2L, 3L), storedIds("SELECT genre_id FROM film_genre WHERE film_id = ?", film.getId()));
+		assertEquals(Set.of(kept.getId(), added.getId()), storedIds("SELECT director_id FROM film_director WHERE film_id = ?", film.getId()));
+
+		film.setGenres(new HashSet<>());
+		film.setDirectors(null);
+		updated = filmDbStorage.update(film);
+
+		assertEquals(Set.of(), storedIds("SELECT genre_id FROM film_genre WHERE film_id = ?", film.getId()));
+		assertEquals(Set.of(), storedIds("SELECT director_id FROM film_director WHERE film_id = ?", film.getId()));
+		assertTrue(updated.getGenres().isEmpty());
+		assertTrue(updated.getDirectors().isEmpty());
+	}
+
+	private Set<Long> storedIds(String sql, Long filmId) {
+		return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, filmId));
+	}
+
+	private int likesOf(Film film) {
+		return storedIds("SELECT user_id FROM film_like WHERE film_id = ?", film.getId()).size();
+	}
+
 	@Test
 	public void testCreateUser() {
 		User user = new User(1L, "myemail@gmail.com", "login", "name", LocalDate.of(2024, 1, 1));
@@ -154,6 +277,44 @@ class FilmorateApplicationTests {
 		assertFalse(friends.contains(friend.getId()));
 	}
 
+	@Test
+	public void testGetCommonFriends() {
+		User user = userDbStorage.create(new User(1L, "common1@gmail.com", "common1", "common1", LocalDate.of(2000, 1, 1)));
+		User other = userDbStorage.create(new User(1L, "common2@gmail.com", "common2", "common2", LocalDate.of(2000, 1, 1)));
+		User shared = userDbStorage.create(new User(1L, "common3@gmail.com", "common3", "common3", LocalDate.of(2000, 1, 1)));
+		User single = userDbStorage.create(new User(1L, "common4@gmail.com", "common4", "common4", LocalDate.of(2000, 1, 1)));
+
+		friendshipDbStorage.addFriend(user, shared);
+		friendshipDbStorage.addFriend(user, single);
+		friendshipDbStorage.addFriend(other, shared);
+
+		assertEquals(Set.of(shared.getId()), friendshipDbStorage.getCommonFriends(user, other));
+		assertEquals(2, friendshipDbStorage.countFriends(user));
+	}
+
+	@Test
+	public void testFriendshipGraphIntersectsAdjacencyLists() {
+		FriendshipGraph graph = new FriendshipGraph(null, true);
+		for (long friendId = 1; friendId <= 1000; friendId++) {
+			graph.addEdge(1L, friendId);
+		}
+		graph.addEdge(2L, 500L);
+		graph.addEdge(2L, 7L);
+		graph.addEdge(2L, 2000L);
+		for (long friendId = 3; friendId <= 600; friendId += 3) {
+			graph.addEdge(3L, friendId);
+		}
+
+		assertArrayEquals(new long[]{7L, 500L}, graph.getCommonFriends(1L, 2L));
+		assertEquals(200, graph.getCommonFriends(3L, 1L).length);
+
+		graph.removeUser(500L);
+		graph.removeEdge(2L, 7L);
+
+		assertArrayEquals(new long[0], graph.getCommonFriends(1L, 2L));
+		assertEquals(999, graph.countFriends(1L));
+	}
+
 	@Test
 	public void testCreateFilm() {
 		Mpa mpa = new Mpa();
@@ -243,6 +404,799 @@ class FilmorateApplicationTests {
 		assertEquals(2, films.size());
 	}
 
+	@Test
+	public void testTopFilmsByLikeCountsEachUserOnce() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "liker@gmail.com", "liker", "liker", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "liker2@gmail.com", "liker2", "liker2", LocalDate.of(2000, 1, 1)));
+		User thirdUser = userDbStorage.create(new User(1L, "liker3@gmail.com", "liker3", "liker3", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Liked", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film rival = filmDbStorage.create(new Film(1L, "Liked rival", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		assertTrue(filmDbStorage.addLike(film, user));
+		assertFalse(filmDbStorage.addLike(film, user));
+		assertTrue(filmDbStorage.addLike(film, otherUser));
+		assertTrue(filmDbStorage.deleteLike(film, otherUser));
+		assertFalse(filmDbStorage.deleteLike(film, otherUser));
+		filmDbStorage.addLike(rival, otherUser);
+		filmDbStorage.addLike(rival, thirdUser);
+		filmDbStorage.addLike(rival, thirdUser);
+
+		assertEquals(1, likesOf(film));
+		assertEquals(2, likesOf(rival));
+		assertEquals(List.of(rival.getId(), film.getId()), topIdsOf(film, rival));
+		assertEquals(0, filmDbStorage.reconcileLikeCounts());
+
+		userDbStorage.delete(otherUser);
+
+		assertEquals(1, likesOf(film));
+		assertEquals(1, likesOf(rival));
+		assertEquals(List.of(film.getId(), rival.getId()), topIdsOf(film, rival));
+		assertEquals(0, filmDbStorage.reconcileLikeCounts());
+	}
+
+	@Test
+	public void testRolledBackLikesLeavePopularityUnchanged() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "rollback1@gmail.com", "rollback1", "rollback1", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "rollback2@gmail.com", "rollback2", "rollback2", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Rollback 1", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film rival = filmDbStorage.create(new Film(1L, "Rollback 2", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		filmDbStorage.addLike(film, user);
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			filmDbStorage.addLike(rival, user);
+			filmDbStorage.addLike(rival, otherUser);
+			filmDbStorage.deleteLike(film, user);
+			status.setRollbackOnly();
+		});
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			userDbStorage.delete(user);
+			status.setRollbackOnly();
+		});
+
+		assertEquals(List.of(film.getId(), rival.getId()), topIdsOf(film, rival));
+		assertEquals(1, likesOf(film));
+		assertEquals(0, likesOf(rival));
+		assertEquals(0, filmDbStorage.reconcileLikeCounts());
+	}
+
+	@Test
+	public void testLikeOfNotYetIndexedFilmSeedsPopularity() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Genre genre = genreDbStorage.findById(1);
+		User user = userDbStorage.create(new User(1L, "seed1@gmail.com", "seed1", "seed1", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "seed2@gmail.com", "seed2", "seed2", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Seeded", mpa, new HashSet<>(Set.of(genre)), new HashSet<Director>(), "BBB", LocalDate.of(1931, 8, 3), 60, new HashSet<>()));
+		Film rival = filmDbStorage.create(new Film(1L, "Seeded rival", mpa, new HashSet<>(Set.of(genre)), new HashSet<Director>(), "BBB", LocalDate.of(1931, 8, 3), 60, new HashSet<>()));
+		filmDbStorage.addLike(rival, user);
+		filmDbStorage.addLike(film, user);
+		// as if the like committed before the creating transaction indexed the film
+		popularityIndex.removeFilm(film.getId());
+
+		filmDbStorage.addLike(film, otherUser);
+
+		assertEquals(2, popularityIndex.getLikes(film.getId()));
+		assertEquals(List.of(film.getId(), rival.getId()), topIdsOf(film, rival));
+		assertEquals(List.of(film.getId(), rival.getId()), popularityIndex.getTopFilmIds(1000, genre.getId(), 1931).stream()
+				.filter(id -> id.equals(film.getId()) || id.equals(rival.getId()))
+				.toList());
+	}
+
+	@Test
+	public void testPopularByGenreAndYearMatchesSql() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "partition1@gmail.com", "partition1", "partition1", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "partition2@gmail.com", "partition2", "partition2", LocalDate.of(2000, 1, 1)));
+		Film drama = filmDbStorage.create(new Film(1L, "Partition 1", mpa, Set.of(new Genre(2, null)), new HashSet<Director>(), "BBB", LocalDate.of(1931, 8, 3), 60, new HashSet<>()));
+		Film comedy = filmDbStorage.create(new Film(1L, "Partition 2", mpa, Set.of(new Genre(1, null), new Genre(2, null)), new HashSet<Director>(), "BBB", LocalDate.of(1931, 8, 3), 60, new HashSet<>()));
+		Film moved = filmDbStorage.create(new Film(1L, "Partition 3", mpa, Set.of(new Genre(1, null)), new HashSet<Director>(), "BBB", LocalDate.of(1932, 8, 3), 60, new HashSet<>()));
+		filmDbStorage.addLike(comedy, user);
+		filmDbStorage.addLike(comedy, otherUser);
+		filmDbStorage.addLike(moved, user);
+
+		assertPopularMatchesSql(List.of(1, 2), List.of(1931, 1932));
+
+		moved.setGenres(Set.of(new Genre(2, null)));
+		moved.setReleaseDate(LocalDate.of(1931, 8, 3));
+		filmDbStorage.update(moved);
+		filmDbStorage.delete(drama);
+
+		assertPopularMatchesSql(List.of(1, 2), List.of(1931, 1932));
+		assertEquals(List.of(), filmDbStorage.getTopFilmsByLike(1000L, null, 1932));
+		assertEquals(List.of(comedy.getId(), moved.getId()), filmDbStorage.getTopFilmsByLike(1000L, 2, 1931).stream()
+				.map(Film::getId)
+				.toList());
+	}
+
+	@Test
+	public void testBatchLoaderChunksSequentiallyAndInParallel() {
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			ids.add(userDbStorage.create(new User(1L, "chunk" + i + "@gmail.com", "chunk" + i, "chunk" + i, LocalDate.of(2000, 1, 1))).getId());
+		}
+		List<Long> idsWithDuplicates = new ArrayList<>(ids);
+		idsWithDuplicates.addAll(ids);
+		idsWithDuplicates.add(-1L);
+		String sql = "SELECT user_id FROM users WHERE user_id = ANY(?)";
+
+		BatchLoader sequential = new BatchLoader(jdbcTemplate, 2, 100);
+		BatchLoader parallel = new BatchLoader(jdbcTemplate, 2, 2);
+		try {
+			for (BatchLoader batchLoader : List.of(sequential, parallel)) {
+				List<Long> loaded = new ArrayList<>();
+				batchLoader.query(sql, "BIGINT", idsWithDuplicates, (rs) -> {
+					loaded.add(rs.getLong("user_id"));
+				});
+				assertEquals(new HashSet<>(ids), new HashSet<>(loaded));
+				assertEquals(ids.size(), loaded.size());
+			}
+
+			List<Long> loadedInTransaction = new TransactionTemplate(transactionManager).execute(status -> {
+				List<Long> idsInTransaction = new ArrayList<>(ids);
+				for (int i = 0; i < 3; i++) {
+					idsInTransaction.add(userDbStorage.create(new User(1L, "uncommitted" + i + "@gmail.com", "uncommitted" + i, "uncommitted" + i, LocalDate.of(2000, 1, 1))).getId());
+				}
+				List<Long> loaded = new ArrayList<>();
+				parallel.query(sql, "BIGINT", idsInTransaction, (rs) -> {
+					loaded.add(rs.getLong("user_id"));
+				});
+				status.setRollbackOnly();
+				return loaded;
+			});
+			assertEquals(ids.size() + 3, loadedInTransaction.size());
+		} finally {
+			sequential.shutdown();
+			parallel.shutdown();
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> new BatchLoader(jdbcTemplate, 1000, 0));
+		assertThrows(IllegalArgumentException.class, () -> new BatchLoader(jdbcTemplate, 0, 4));
+	}
+
+	@Test
+	public void testImportReportsValidInvalidMixedAndRolledBackBatches() throws IOException {
+		FilmImportService importService = importService(new InMemoryFilmStorage() {
+			@Override
+			public List<Film> createAll(List<Film> films) {
+				if (films.stream().anyMatch(film -> "Импорт сбой".equals(film.getName()))) {
+					jdbcTemplate.update("INSERT INTO film (name, release_date, duration) VALUES ('Импорт сбой', '2024-08-03', 60)");
+					throw new ConditionsNotMetException("Сбой записи");
+				}
+				return filmDbStorage.createAll(films);
+			}
+		});
+
+		List<BulkItemResult> valid = importFilms(importService, FilmImportService.FORMAT_NDJSON, """
+				{"name":"Импорт валидный 1","releaseDate":"2024-08-03","duration":60,"mpa":{"id":1}}
+				{"name":"Импорт валидный 2","releaseDate":"2024-08-03","duration":60}
+				{"name":"Импорт валидный 3","releaseDate":"2024-08-03","duration":60,"genres":[{"id":1}]}
+				""");
+		assertEquals(List.of(1L, 2L, 3L), linesWith(valid, BulkItemResult.Status.OK));
+		assertTrue(valid.stream().allMatch(result -> result.getId() != null));
+
+		List<BulkItemResult> invalid = importFilms(importService, FilmImportService.FORMAT_NDJSON, """
+				{"name":"","releaseDate":"2024-08-03","duration":60}
+				not json
+				{"name":"Импорт без даты","duration":60}
+				{"name":"Импорт с рейтингом","releaseDate":"2024-08-03","duration":60,"mpa":{"id":999}}
+				{"name":"Импорт с режиссером","releaseDate":"2024-08-03","duration":60,"directors":[{"id":999999}]}
+				""");
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), linesWith(invalid, BulkItemResult.Status.FAILED));
+		assertEquals(5, invalid.size());
+
+		List<BulkItemResult> mixed = importFilms(importService, FilmImportService.FORMAT_NDJSON, """
+				{"name":"Импорт смешанный 1","releaseDate":"2024-08-03","duration":60}
+				not json
+				{"name":"Импорт смешанный 2","releaseDate":"2024-08-03","duration":60}
+				{"name":"Импорт смешанный 3","releaseDate":"2024-08-03","duration":60}
+				{"name":"Импорт сбой","releaseDate":"2024-08-03","duration":60}
+				{"name":"Импорт смешанный 4","releaseDate":"2024-08-03","duration":60}
+				""");
+		assertEquals(List.of(1L, 3L, 6L), linesWith(mixed, BulkItemResult.Status.OK));
+		assertEquals(List.of(2L, 4L, 5L), linesWith(mixed, BulkItemResult.Status.FAILED));
+		assertEquals(0, countFilmsNamed("Импорт сбой"));
+		assertEquals(0, countFilmsNamed("Импорт смешанный 3"));
+		assertEquals(1, countFilmsNamed("Импорт смешанный 1"));
+		assertEquals(1, countFilmsNamed("Импорт смешанный 4"));
+
+		List<BulkItemResult> csv = importFilms(importService, FilmImportService.FORMAT_CSV, """
+				name,description,releaseDate,duration,mpa,genres,directors
+				"Импорт CSV 1","первая строка
+				вторая строка",2024-08-03,60,1,1;2,
+				"Импорт CSV 2",,2024-08-03,60,,,
+				""");
+		assertEquals(List.of(2L, 4L), linesWith(csv, BulkItemResult.Status.OK));
+		assertEquals("первая строка\nвторая строка", filmDbStorage.findById(csv.get(0).getId()).getDescription());
+
+		List<BulkItemResult> unclosed = importFilms(importService, FilmImportService.FORMAT_CSV,
+				"name,description,releaseDate,duration,mpa,genres,directors\n"
+						+ "\"Импорт CSV 3\",\"незакрытая кавычка\n"
+						+ "строка\n".repeat(200)
+						+ "\"Импорт CSV 4\",,2024-08-03,60,,,\n");
+		assertEquals(List.of(2L), linesWith(unclosed, BulkItemResult.Status.FAILED));
+		assertEquals(List.of(203L), linesWith(unclosed, BulkItemResult.Status.OK));
+		assertEquals(0, countFilmsNamed("Импорт CSV 3"));
+	}
+
+	@Test
+	public void testLikeBufferKeepsOnlyTransitions() {
+		FilmLikeBuffer buffer = new FilmLikeBuffer(true, 1000, Duration.ofSeconds(1));
+		List<Boolean> lookups = new ArrayList<>();
+		BooleanSupplier notLiked = () -> lookups.add(false) && false;
+
+		assertTrue(buffer.offer(1L, 1L, true, notLiked));
+		assertFalse(buffer.offer(1L, 1L, true, notLiked));
+		assertEquals(1, buffer.size());
+		assertTrue(buffer.offer(1L, 1L, false, notLiked));
+		assertEquals(0, buffer.size());
+		assertFalse(buffer.offer(1L, 2L, false, notLiked));
+		assertEquals(0, buffer.size());
+		assertEquals(2, lookups.size());
+
+		assertTrue(buffer.offer(1L, 1L, true, notLiked));
+		assertTrue(buffer.offer(2L, 1L, false, () -> true));
+		assertEquals(2, buffer.size());
+	}
+
+	@Test
+	public void testLikeBufferFlushUsesInFlightStateAndRequeuesOnFailure() {
+		FilmLikeBuffer buffer = new FilmLikeBuffer(true, 1000, Duration.ofSeconds(1));
+		BooleanSupplier unexpectedLookup = () -> {
+			throw new AssertionError("stored state is known from the in-flight operation");
+		};
+		buffer.offer(1L, 1L, true, () -> false);
+		buffer.offer(2L, 1L, true, () -> false);
+
+		List<LikeOperation> drained = buffer.drain();
+		assertEquals(Set.of(new LikeOperation(1L, 1L, Operation.ADD), new LikeOperation(2L, 1L, Operation.ADD)), new HashSet<>(drained));
+		assertEquals(0, buffer.size());
+
+		assertTrue(buffer.offer(1L, 1L, false, unexpectedLookup));
+		assertFalse(buffer.offer(2L, 1L, true, unexpectedLookup));
+		assertEquals(1, buffer.size());
+
+		buffer.requeue(drained);
+		List<LikeOperation> retried = buffer.drain();
+		assertEquals(List.of(new LikeOperation(2L, 1L, Operation.ADD)), retried);
+
+		buffer.completed(retried);
+		assertTrue(buffer.offer(2L, 1L, false, () -> true));
+		assertEquals(List.of(new LikeOperation(2L, 1L, Operation.REMOVE)), buffer.drain());
+	}
+
+	@Test
+	public void testLikeFlusherSkipsIdleBuffer() {
+		FilmStorage idleStorage = new InMemoryFilmStorage() {
+			@Override
+			public int flushBufferedLikes(boolean force) {
+				throw new AssertionError("an idle buffer must not open a transaction");
+			}
+		};
+		FilmLikeBufferFlusher flusher = new FilmLikeBufferFlusher(idleStorage);
+
+		assertEquals(0, flusher.flush());
+		assertEquals(0, flusher.flushAll());
+		// write-behind is off in the default configuration
+		assertFalse(filmDbStorage.hasLikesToFlush(false));
+		assertFalse(filmDbStorage.hasLikesToFlush(true));
+	}
+
+	@Test
+	public void testLikeBufferDiscardsPendingAndInFlightLikesOfFilm() {
+		FilmLikeBuffer buffer = new FilmLikeBuffer(true, 1000, Duration.ofSeconds(1));
+		buffer.offer(1L, 1L, true, () -> false);
+		List<LikeOperation> drained = buffer.drain();
+		buffer.offer(1L, 2L, true, () -> false);
+		buffer.offer(2L, 2L, true, () -> false);
+
+		buffer.discardFilm(1L);
+		buffer.requeue(drained);
+
+		assertEquals(List.of(new LikeOperation(2L, 2L, Operation.ADD)), buffer.drain());
+		assertTrue(buffer.offer(1L, 1L, true, () -> false));
+	}
+
+	private FilmImportService importService(FilmStorage filmStorage) {
+		return new FilmImportService(filmStorage, genreService, mpaService, directorService, objectMapper, validator,
+				transactionManager, 2, 2);
+	}
+
+	private List<BulkItemResult> importFilms(FilmImportService importService, String format, String body) throws IOException {
+		StringWriter out = new StringWriter();
+		importService.importFilms(new BufferedReader(new StringReader(body)), format, out);
+		List<BulkItemResult> results = new ArrayList<>();
+		for (String line : out.toString().split("\n")) {
+			results.add(objectMapper.readValue(line, BulkItemResult.class));
+		}
+		results.sort(Comparator.comparingLong(BulkItemResult::getLine));
+		return results;
+	}
+
+	private List<Long> linesWith(List<BulkItemResult> results, BulkItemResult.Status status) {
+		return results.stream()
+				.filter(result -> result.getStatus() == status)
+				.map(BulkItemResult::getLine)
+				.toList();
+	}
+
+	private int countFilmsNamed(String name) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film WHERE name = ?", Integer.class, name);
+	}
+
+	private void assertPopularMatchesSql(List<Integer> genreIds, List<Integer> years) {
+		String sql = """
+				SELECT f.film_id
+				FROM film AS f
+				LEFT JOIN (SELECT film_id, COUNT(DISTINCT user_id) AS likes FROM film_like GROUP BY film_id) AS fl
+				  ON f.film_id = fl.film_id
+				WHERE (CAST(? AS INTEGER) IS NULL OR EXTRACT(YEAR FROM f.release_date) = ?)
+				  AND (CAST(? AS INTEGER) IS NULL OR ? IN (SELECT genre_id FROM film_genre WHERE film_id = f.film_id))
+				ORDER BY COALESCE(fl.likes, 0) DESC, f.film_id
+				LIMIT 1000""";
+		List<Integer> genreFilters = new ArrayList<>(genreIds);
+		genreFilters.add(null);
+		List<Integer> yearFilters = new ArrayList<>(years);
+		yearFilters.add(null);
+		for (Integer genreId : genreFilters) {
+			for (Integer year : yearFilters) {
+				if (genreId == null && year == null) {
+					continue;
+				}
+				List<Long> expected = jdbcTemplate.queryForList(sql, Long.class, year, year, genreId, genreId);
+				List<Long> actual = filmDbStorage.getTopFilmsByLike(1000L, genreId, year).stream()
+						.map(Film::getId)
+						.toList();
+				assertEquals(expected, actual, "genreId = " + genreId + ", year = " + year);
+			}
+		}
+	}
+
+	private List<Long> topIdsOf(Film... films) {
+		Set<Long> ids = new HashSet<>();
+		for (Film film : films) {
+			ids.add(film.getId());
+		}
+		return filmDbStorage.getTopFilmsByLike(1000L).stream()
+				.map(Film::getId)
+				.filter(ids::contains)
+				.toList();
+	}
+
+	@Test
+	public void testCommonFilmsOrderedByLikes() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "both1@gmail.com", "both1", "both1", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "both2@gmail.com", "both2", "both2", LocalDate.of(2000, 1, 1)));
+		User fan = userDbStorage.create(new User(1L, "both3@gmail.com", "both3", "both3", LocalDate.of(2000, 1, 1)));
+		Film lessLiked = filmDbStorage.create(new Film(1L, "Common 1", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film moreLiked = filmDbStorage.create(new Film(1L, "Common 2", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film notCommon = filmDbStorage.create(new Film(1L, "Common 3", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		filmDbStorage.addLike(lessLiked, user);
+		filmDbStorage.addLike(lessLiked, otherUser);
+		filmDbStorage.addLike(moreLiked, user);
+		filmDbStorage.addLike(moreLiked, otherUser);
+		filmDbStorage.addLike(moreLiked, fan);
+		filmDbStorage.addLike(notCommon, user);
+
+		List<Film> common = filmDbStorage.getCommonUserFilms(user.getId(), otherUser.getId());
+
+		assertEquals(List.of(moreLiked.getId(), lessLiked.getId()), common.stream().map(Film::getId).toList());
+		assertTrue(filmDbStorage.hasLike(notCommon.getId(), user.getId()));
+		assertFalse(filmDbStorage.hasLike(notCommon.getId(), otherUser.getId()));
+		assertEquals(3, likesOf(moreLiked));
+
+		userDbStorage.delete(fan);
+
+		assertEquals(2, likesOf(moreLiked));
+	}
+
+	@Test
+	public void testRecommendationsFromCoLikedFilms() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "rec1@gmail.com", "rec1", "rec1", LocalDate.of(2000, 1, 1)));
+		User similar = userDbStorage.create(new User(1L, "rec2@gmail.com", "rec2", "rec2", LocalDate.of(2000, 1, 1)));
+		Film seen = filmDbStorage.create(new Film(1L, "Seen", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film unseen = filmDbStorage.create(new Film(1L, "Unseen", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		filmDbStorage.addLike(seen, user);
+		filmDbStorage.addLike(seen, similar);
+		filmDbStorage.addLike(unseen, similar);
+		filmDbStorage.rebuildRecommendations();
+
+		List<Film> recommendations = filmDbStorage.getRecommendationByUserId(user.getId());
+
+		assertEquals(List.of(unseen.getId()), recommendations.stream().map(Film::getId).toList());
+		assertTrue(filmDbStorage.getRecommendationByUserId(similar.getId()).isEmpty());
+	}
+
+	@Test
+	public void testSimilarFilmsShareLikers() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User first = userDbStorage.create(new User(1L, "sim1@gmail.com", "sim1", "sim1", LocalDate.of(2000, 1, 1)));
+		User second = userDbStorage.create(new User(1L, "sim2@gmail.com", "sim2", "sim2", LocalDate.of(2000, 1, 1)));
+		User other = userDbStorage.create(new User(1L, "sim3@gmail.com", "sim3", "sim3", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Similar 1", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film twin = filmDbStorage.create(new Film(1L, "Similar 2", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film unrelated = filmDbStorage.create(new Film(1L, "Similar 3", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		filmDbStorage.addLike(film, first);
+		filmDbStorage.addLike(film, second);
+		filmDbStorage.addLike(twin, first);
+		filmDbStorage.addLike(twin, second);
+		filmDbStorage.addLike(unrelated, other);
+
+		assertEquals(List.of(twin.getId()), filmDbStorage.getSimilarFilms(film.getId(), 10).stream().map(Film::getId).toList());
+
+		filmDbStorage.deleteLike(twin, first);
+		filmDbStorage.deleteLike(twin, second);
+
+		assertTrue(filmDbStorage.getSimilarFilms(film.getId(), 10).isEmpty());
+	}
+
+	@Test
+	public void testSimilarityRefreshQueriesLikersOutsideOfLock() {
+		List<Long> queried = new ArrayList<>();
+		FilmSimilarityIndex[] index = new FilmSimilarityIndex[1];
+		JdbcTemplate storedLikes = new JdbcTemplate() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+				queried.add((Long) args[0]);
+				if (queried.size() == 1) {
+					// a like indexed while the likers are read makes them stale, and needs the write lock
+					index[0].addLike(3L, 1L);
+					index[0].addLike(3L, 2L);
+				}
+				return (List<T>) List.<Long>of();
+			}
+		};
+		index[0] = new FilmSimilarityIndex(storedLikes, new FilmLikeIndex(jdbcTemplate, false), true, 32, 4);
+		index[0].addLike(1L, 1L);
+		index[0].addLike(1L, 2L);
+		index[0].addLike(2L, 1L);
+		index[0].addLike(2L, 2L);
+		assertEquals(List.of(2L), index[0].findSimilar(1L, 10));
+
+		index[0].removeLike(2L);
+
+		assertEquals(List.of(2L, 2L), queried);
+		assertEquals(List.of(3L), index[0].findSimilar(1L, 10));
+	}
+
+	@Test
+	public void testSearchFilmsByTitleAndDirectorName() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Director director = directorDbStorage.create(new Director(1L, "Эльдар Рязанов"));
+		Film film = filmDbStorage.create(new Film(1L, "Ирония судьбы", mpa, new HashSet<Genre>(), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(1976, 1, 1), 184, new HashSet<>()));
+
+		assertEquals(List.of(film.getId()), filmDbStorage.searchFilms("РОНИЯ СУД", true, false).stream().map(Film::getId).toList());
+		assertEquals(List.of(film.getId()), filmDbStorage.searchFilms("рязан", false, true).stream().map(Film::getId).toList());
+
+		directorDbStorage.update(new Director(director.getId(), "Eldar Ryazanov"));
+
+		assertTrue(filmDbStorage.searchFilms("рязан", false, true).isEmpty());
+		assertEquals(List.of(film.getId()), filmDbStorage.searchFilms("ryazanov", false, true).stream().map(Film::getId).toList());
+	}
+
+	@Test
+	public void testFuzzySearchToleratesTypos() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Director director = directorDbStorage.create(new Director(1L, "Георгий Данелия"));
+		Film film = filmDbStorage.create(new Film(1L, "Мимино", mpa, new HashSet<Genre>(), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(1977, 12, 1), 97, new HashSet<>()));
+
+		assertTrue(filmDbStorage.searchFilms("данэлия", false, true).isEmpty());
+		assertEquals(List.of(film.getId()), filmDbStorage.searchFilms("данэлия", false, true, true).stream().map(Film::getId).toList());
+		assertEquals(List.of(film.getId()), filmDbStorage.searchFilms("мимио", true, false, true).stream().map(Film::getId).toList());
+		assertTrue(filmDbStorage.searchFilms("данэлия", true, false, true).isEmpty());
+	}
+
+	@Test
+	public void testDescriptionSearchRanksByRelevance() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Film rare = filmDbStorage.create(new Film(1L, "Планета", mpa, new HashSet<Genre>(), new HashSet<Director>(), "Экспедиция на планету Солярис", LocalDate.of(1972, 3, 20), 167, new HashSet<>()));
+		Film often = filmDbStorage.create(new Film(1L, "Океан", mpa, new HashSet<Genre>(), new HashSet<Director>(), "Солярис, океан Соляриса и снова Солярис", LocalDate.of(1972, 3, 20), 167, new HashSet<>()));
+		Film titled = filmDbStorage.create(new Film(1L, "Солярис", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2002, 11, 27), 99, new HashSet<>()));
+
+		assertEquals(List.of(often.getId(), rare.getId()), filmDbStorage.searchFilms("солярис", false, false, true, false).stream().map(Film::getId).toList());
+		assertEquals(List.of(titled.getId(), often.getId(), rare.getId()), filmDbStorage.searchFilms("солярис", true, false, true, false).stream().map(Film::getId).toList());
+
+		filmDbStorage.delete(often);
+
+		assertEquals(List.of(rare.getId()), filmDbStorage.searchFilms("солярис", false, false, true, false).stream().map(Film::getId).toList());
+	}
+
+	@Test
+	public void testDescriptionSearchMatchesWholeWordsWithAndWithoutIndex() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Film starship = filmDbStorage.create(new Film(1L, "Звездолёт", mpa, new HashSet<Genre>(), new HashSet<Director>(), "Звездолёт летит к звезде Альфа", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		Film station = filmDbStorage.create(new Film(1L, "Станция", mpa, new HashSet<Genre>(), new HashSet<Director>(), "Станция у звезды", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		Film tree = filmDbStorage.create(new Film(1L, "Ёлка", mpa, new HashSet<Genre>(), new HashSet<Director>(), "Ёлка и звездочёт", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		Set<Long> ours = Set.of(starship.getId(), station.getId(), tree.getId());
+		DescriptionIndex withoutIndex = new DescriptionIndex(jdbcTemplate, false, 1.2, 0.75, 1.0);
+
+		for (String query : List.of("звезде", "звезд", "ЕЛКА", "звезды станция", "звзде")) {
+			Set<Long> indexed = new HashSet<>(filmDbStorage.searchFilms(query, false, false, true, false).stream().map(Film::getId).filter(ours::contains).toList());
+			Set<Long> fallback = new HashSet<>(withoutIndex.match(query));
+			fallback.retainAll(ours);
+			assertEquals(indexed, fallback, query);
+		}
+		assertEquals(List.of(starship.getId()), filmDbStorage.searchFilms("звезде", false, false, true, false).stream().map(Film::getId).filter(ours::contains).toList());
+		assertTrue(withoutIndex.match("звезд").stream().noneMatch(ours::contains));
+		assertEquals(Set.of(tree.getId()), withoutIndex.match("елка").stream().filter(ours::contains).collect(Collectors.toSet()));
+
+		// a typo is accepted by the index only when the query is fuzzy
+		assertTrue(filmDbStorage.searchFilms("звзде", false, false, true, false).stream().map(Film::getId).noneMatch(ours::contains));
+		assertEquals(List.of(starship.getId()), filmDbStorage.searchFilms("звзде", false, false, true, true).stream().map(Film::getId).filter(ours::contains).toList());
+	}
+
+	@Test
+	public void testReviewPagesSplitUsefulTies() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "reviewer@gmail.com", "reviewer", "reviewer", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Reviewed", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Review useful = reviewDbStorage.create(new Review(null, "Полезный", true, film.getId(), user.getId(), 5));
+		Review first = reviewDbStorage.create(new Review(null, "Первый", true, film.getId(), user.getId(), 0));
+		Review second = reviewDbStorage.create(new Review(null, "Второй", false, film.getId(), user.getId(), 0));
+		Review third = reviewDbStorage.create(new Review(null, "Третий", true, film.getId(), user.getId(), 0));
+
+		// the page ends inside the run of useful = 0, the next one continues after review_id within that run
+		CursorPage<Review> page = reviewService.findPage(film.getId(), 2, null);
+		assertEquals(List.of(useful.getReviewId(), first.getReviewId()), page.getItems().stream().map(Review::getReviewId).toList());
+
+		CursorPage<Review> nextPage = reviewService.findPage(film.getId(), 2, page.getNextCursor());
+		assertEquals(List.of(second.getReviewId(), third.getReviewId()), nextPage.getItems().stream().map(Review::getReviewId).toList());
+		assertNull(nextPage.getNextCursor());
+
+		ReviewController reviewController = new ReviewController(reviewService);
+		assertThrows(ConditionsNotMetException.class, () -> reviewController.findByParameter(film.getId(), -1, null, new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testKeysetPagesContinueAfterCursor() {
+		User first = userDbStorage.create(new User(1L, "page1@gmail.com", "page1", "page1", LocalDate.of(2000, 1, 1)));
+		User second = userDbStorage.create(new User(1L, "page2@gmail.com", "page2", "page2", LocalDate.of(2000, 1, 1)));
+		User third = userDbStorage.create(new User(1L, "page3@gmail.com", "page3", "page3", LocalDate.of(2000, 1, 1)));
+
+		CursorPage<User> page = PageCursor.page(userDbStorage.findPage(first.getId() - 1, 3), 2, user -> new long[]{user.getId()});
+		assertEquals(List.of(first.getId(), second.getId()), page.getItems().stream().map(User::getId).toList());
+
+		long afterId = PageCursor.decode(page.getNextCursor(), 1)[0];
+		assertEquals(List.of(third.getId()), userDbStorage.findPage(afterId, 3).stream().map(User::getId).toList());
+		assertThrows(ConditionsNotMetException.class, () -> PageCursor.decode("не курсор", 1));
+	}
+
+	@Test
+	public void testExportHydratesFilmsInIdOrder() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "export@gmail.com", "export", "export", LocalDate.of(2000, 1, 1)));
+		Director director = directorDbStorage.create(new Director(1L, "Режиссер выгрузки"));
+		Film film = filmDbStorage.create(new Film(1L, "Exported", mpa, Set.of(new Genre(1, null)), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		filmDbStorage.addLike(film, user);
+
+		List<ExportedFilm> exported = new ArrayList<>();
+		long count = filmDbStorage.exportFilms(exported::add);
+
+		assertEquals(count, exported.size());
+		assertEquals(exported.stream().map(ExportedFilm::getFilm).map(Film::getId).sorted().toList(),
+				exported.stream().map(ExportedFilm::getFilm).map(Film::getId).toList());
+		ExportedFilm exportedFilm = exported.stream().filter(e -> e.getFilm().getId().equals(film.getId())).findFirst().orElseThrow();
+		assertEquals(1, exportedFilm.getLikes());
+		assertEquals(List.of(1), exportedFilm.getFilm().getGenres().stream().map(Genre::getId).toList());
+		assertEquals(List.of(director.getId()), exportedFilm.getFilm().getDirectors().stream().map(Director::getId).toList());
+	}
+
+	@Test
+	public void testExporterHydratesEveryWindow() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "window@gmail.com", "window", "window", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "window2@gmail.com", "window2", "window2", LocalDate.of(2000, 1, 1)));
+		Director director = directorDbStorage.create(new Director(1L, "Режиссер окна"));
+		Film first = filmDbStorage.create(new Film(1L, "Window 1", mpa, Set.of(new Genre(1, null)), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film second = filmDbStorage.create(new Film(1L, "Window 2", mpa, Set.of(new Genre(2, null)), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		Film third = filmDbStorage.create(new Film(1L, "Window 3", mpa, new HashSet<Genre>(), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+		filmDbStorage.addLike(first, user);
+		filmDbStorage.addLike(third, user);
+		filmDbStorage.addLike(third, otherUser);
+
+		// three consecutive films always span at least two windows of two
+		FilmExporter exporter = new FilmExporter(jdbcTemplate, new FilmRowMapper(referenceDataCache), referenceDataCache, 1, 2);
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		List<ExportedFilm> exported = new ArrayList<>();
+		long count = readOnly.execute(status -> exporter.export(exported::add));
+
+		assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film", Long.class), count);
+		assertEquals(count, exported.size());
+		assertEquals(exported.stream().map(ExportedFilm::getFilm).map(Film::getId).sorted().toList(),
+				exported.stream().map(ExportedFilm::getFilm).map(Film::getId).toList());
+		List<ExportedFilm> ours = exported.stream().filter(e -> Set.of(first.getId(), second.getId(), third.getId()).contains(e.getFilm().getId())).toList();
+		assertEquals(List.of(first.getId(), second.getId(), third.getId()), ours.stream().map(e -> e.getFilm().getId()).toList());
+		assertEquals(List.of(1L, 0L, 2L), ours.stream().map(ExportedFilm::getLikes).toList());
+		assertEquals(List.of(List.of(1), List.of(2), List.of()), ours.stream().map(e -> e.getFilm().getGenres().stream().map(Genre::getId).toList()).toList());
+		assertEquals(List.of(List.of(director.getId()), List.of(), List.of(director.getId())),
+				ours.stream().map(e -> e.getFilm().getDirectors().stream().map(Director::getId).toList()).toList());
+	}
+
+	@Test
+	public void testSuggestTitlesAndDirectorsByWordPrefix() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Director director = directorDbStorage.create(new Director(1L, "Андрей Тарковский"));
+		Film film = filmDbStorage.create(new Film(1L, "Зеркальный лабиринт", mpa, new HashSet<Genre>(), new HashSet<Director>(Set.of(director)), "BBB", LocalDate.of(1975, 1, 1), 108, new HashSet<>()));
+
+		assertEquals(List.of(new Suggestion(SuggestionType.FILM, film.getId(), "Зеркальный лабиринт")), filmDbStorage.suggest("ЛАБИРИН", 10));
+		assertEquals(List.of(new Suggestion(SuggestionType.DIRECTOR, director.getId(), "Андрей Тарковский")), filmDbStorage.suggest("тарков", 10));
+
+		film.setName("Ностальгия");
+		filmDbStorage.update(film);
+
+		assertTrue(filmDbStorage.suggest("лабирин", 10).isEmpty());
+		assertEquals(List.of(film.getId()), filmDbStorage.suggest("ностальг", 10).stream().map(Suggestion::getId).toList());
+
+		filmDbStorage.delete(film);
+		directorDbStorage.delete(director);
+
+		assertTrue(filmDbStorage.suggest("ностальг", 10).isEmpty());
+		assertTrue(filmDbStorage.suggest("тарков", 10).isEmpty());
+	}
+
+	@Test
+	public void testSuggestReadsRebuiltSnapshotAndDelta() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "suggest1@gmail.com", "suggest1", "suggest1", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "suggest2@gmail.com", "suggest2", "suggest2", LocalDate.of(2000, 1, 1)));
+		Film polar = filmDbStorage.create(new Film(1L, "Вьюга полярная", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		Film steppe = filmDbStorage.create(new Film(1L, "Вьюга степная", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		Film mountain = filmDbStorage.create(new Film(1L, "Вьюга горная", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(1980, 1, 1), 90, new HashSet<>()));
+		filmDbStorage.addLike(polar, user);
+		filmDbStorage.addLike(polar, otherUser);
+		filmDbStorage.addLike(steppe, user);
+
+		SuggestionIndex index = new SuggestionIndex(jdbcTemplate, true, 2, 1000, Duration.ofMinutes(5));
+		index.rebuild();
+
+		// a three letter prefix is answered from the top-K cached at build time
+		assertEquals(List.of(polar.getId(), steppe.getId()), index.suggest("вью", 2).stream().map(Suggestion::getId).toList());
+		assertEquals(1, index.getStats().getHits());
+		assertEquals(0, index.getStats().getMisses());
+
+		// longer prefixes and counts above top-K read the range found by binary search
+		assertEquals(List.of(polar.getId(), steppe.getId(), mountain.getId()), index.suggest("вьюга", 3).stream().map(Suggestion::getId).toList());
+		assertEquals(List.of(steppe.getId()), index.suggest("степн", 5).stream().map(Suggestion::getId).toList());
+		assertEquals(2, index.getStats().getMisses());
+
+		// a removed entry leaves the cached list short, the range is read without it
+		index.removeFilm(polar.getId());
+		assertEquals(List.of(steppe.getId(), mountain.getId()), index.suggest("вью", 2).stream().map(Suggestion::getId).toList());
+
+		// a renamed entry in the delta overrides its snapshot entry
+		index.putFilm(mountain.getId(), "Вьюга горная снежная", 5);
+		assertEquals(List.of(mountain.getId(), steppe.getId()), index.suggest("вью", 2).stream().map(Suggestion::getId).toList());
+		assertEquals(List.of(mountain.getId()), index.suggest("снеж", 2).stream().map(Suggestion::getId).toList());
+		assertEquals(List.of(mountain.getId(), steppe.getId()), index.suggest("вьюга", 5).stream().map(Suggestion::getId).toList());
+	}
+
+	@Test
+	public void testRecommendationCacheInvalidatesNeighborhood() {
+		RecommendationCache cache = new RecommendationCache(10);
+		cache.put(1L, List.of(10L, 11L), Set.of(20L), 1000, cache.version(1L));
+		cache.put(2L, List.of(12L), Set.of(21L), 1000, cache.version(2L));
+
+		cache.invalidateFilm(20L);
+
+		assertTrue(cache.get(1L, 2000).isStale());
+		assertFalse(cache.get(2L, 2000).isStale());
+		assertEquals(List.of(1L), cache.findRefreshCandidates(1500, 500));
+
+		long version = cache.version(2L);
+		cache.evict(2L);
+		cache.put(2L, List.of(13L), Set.of(21L), 3000, version);
+		cache.release(2L, version);
+
+		assertNull(cache.get(2L, 3000));
+
+		long firstLoad = cache.version(3L);
+		cache.evict(3L);
+		cache.put(3L, List.of(14L), Set.of(22L), 3000, firstLoad);
+		cache.release(3L, firstLoad);
+
+		assertNull(cache.get(3L, 3000));
+
+		long secondLoad = cache.version(3L);
+		cache.put(3L, List.of(14L), Set.of(22L), 3000, secondLoad);
+		cache.release(3L, secondLoad);
+
+		assertEquals(List.of(14L), cache.get(3L, 3000).getFilmIds());
+	}
+
+	@Test
+	public void testApplyLikesKeepsLastOperationPerUser() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		User user = userDbStorage.create(new User(1L, "bulk@gmail.com", "bulk", "bulk", LocalDate.of(2000, 1, 1)));
+		User otherUser = userDbStorage.create(new User(1L, "bulk2@gmail.com", "bulk2", "bulk2", LocalDate.of(2000, 1, 1)));
+		Film film = filmDbStorage.create(new Film(1L, "Bulk liked", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		filmDbStorage.applyLikes(List.of(
+				new LikeOperation(film.getId(), user.getId(), Operation.ADD),
+				new LikeOperation(film.getId(), otherUser.getId(), Operation.ADD),
+				new LikeOperation(film.getId(), otherUser.getId(), Operation.REMOVE),
+				new LikeOperation(film.getId(), user.getId(), Operation.ADD)));
+
+		Film likedFilm = filmDbStorage.findById(film.getId());
+		filmDbStorage.loadLikes(List.of(likedFilm));
+
+		assertEquals(Set.of(user.getId()), likedFilm.getLikedUsers());
+		assertEquals(Set.of(film.getId()), filmDbStorage.findExistingIds(List.of(film.getId(), -1L)));
+		assertEquals(Set.of(user.getId()), userDbStorage.findExistingIds(List.of(user.getId(), -1L)));
+		assertEquals(0, filmDbStorage.reconcileLikeCounts());
+	}
+
+	@Test
+	public void testCachedFilmIsInvalidatedOnUpdate() {
+		Mpa mpa = new Mpa();
+		mpa.setId(1);
+		Film film = filmDbStorage.create(new Film(1L, "Cached", mpa, new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+		filmDbStorage.findById(film.getId()).setName("Changed by caller");
+		long hits = filmCache.getStats().getHits();
+
+		assertEquals("Cached", filmDbStorage.findById(film.getId()).getName());
+		assertEquals(hits + 1, filmCache.getStats().getHits());
+
+		film.setName("Updated");
+		filmDbStorage.update(film);
+
+		assertEquals("Updated", filmDbStorage.findById(film.getId()).getName());
+	}
+
+	@Test
+	public void testIdentityMapReturnsSameUserWithinRequest() {
+		User user = userDbStorage.create(new User(1L, "identity@gmail.com", "identity", "identity", LocalDate.of(2000, 1, 1)));
+
+		identityMap.open();
+		try {
+			User loaded = userDbStorage.findById(user.getId());
+
+			assertSame(loaded, userDbStorage.findById(user.getId()));
+
+			user.setName("renamed");
+			userDbStorage.update(user);
+
+			assertEquals("renamed", userDbStorage.findById(user.getId()).getName());
+		} finally {
+			identityMap.close();
+		}
+		assertNotSame(userDbStorage.findById(user.getId()), userDbStorage.findById(user.getId()));
+	}
+
+	@Test
+	public void testFindUsersByIdsKeepsOrder() {
+		User first = userDbStorage.create(new User(1L, "first@gmail.com", "first", "first", LocalDate.of(2000, 1, 1)));
+		User second = userDbStorage.create(new User(1L, "second@gmail.com", "second", "second", LocalDate.of(2000, 1, 1)));
+
+		List<User> users = userDbStorage.findByIds(List.of(second.getId(), -1L, first.getId()));
+
+		assertEquals(List.of(second.getId(), first.getId()), users.stream().map(User::getId).toList());
+	}
+
 	@Test
 	public void testCreateDirector() {
 		Director director = new Director(1L, "Guy Ritchie");
@@ -263,6 +1217,23 @@ class FilmorateApplicationTests {
 		assertThat(updatedDirector).hasFieldOrPropertyWithValue("name", "Quentin Jerome Tarantino");
 	}
 
+	@Test
+	public void testDirectorCacheEvictsOldestUnreferenced() {
+		DirectorCache cache = new DirectorCache(2);
+		cache.putAll(List.of(new Director(1L, "Guy Ritchie"), new Director(2L, "Sofia Coppola")));
+
+		assertTrue(cache.isComplete());
+		assertEquals("Guy Ritchie", cache.get(1L).getName());
+
+		cache.put(new Director(3L, "Francis Ford Coppola"));
+
+		assertFalse(cache.isComplete());
+		assertNull(cache.get(2L));
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals(1, cache.getStats().getHits());
+		assertEquals(1, cache.getStats().getMisses());
+	}
+
 	@Test
 	public void testFindByIdDirector() {
 		Director director = new Director(1L, "Guy Ritchie 3");
@@ -1,14 +1,20 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import ru.yandex.practicum.filmorate.exception.ConditionsNotMetException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.service.*;
+import ru.yandex.practicum.filmorate.storage.batch.BatchLoader;
+import ru.yandex.practicum.filmorate.storage.director.DirectorCache;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.director.mapper.DirectorRowMapper;
@@ -16,6 +22,10 @@ import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.feed.InMemoryFeedStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.recommendation.RecommendationCache;
+import ru.yandex.practicum.filmorate.storage.film.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.search.SuggestionIndex;
 import ru.yandex.practicum.filmorate.storage.friendship.FriendshipStorage;
 import ru.yandex.practicum.filmorate.storage.friendship.InMemoryFriendshipStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
@@ -24,34 +34,49 @@ import ru.yandex.practicum.filmorate.storage.genre.mapper.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.mapper.MpaRowMapper;
+import ru.yandex.practicum.filmorate.storage.reference.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class FilmControllerTest {
     public static FriendshipStorage friendshipStorage = new InMemoryFriendshipStorage();
     public static FeedStorage feedStorage = new InMemoryFeedStorage();
     public static UserStorage userStorage = new InMemoryUserStorage();
-    public static GenreStorage genreStorage = new GenreDbStorage(new JdbcTemplate(), new GenreRowMapper());
+    public static BatchLoader batchLoader = new BatchLoader(new JdbcTemplate(), 1000, 4);
+    public static FilmCache filmCache = new FilmCache(1000);
+    public static GenreStorage genreStorage = new GenreDbStorage(new JdbcTemplate(), new GenreRowMapper(), batchLoader);
     public static MpaStorage mpaStorage = new MpaDbStorage(new JdbcTemplate(), new MpaRowMapper());
-    public static DirectorStorage directorStorage = new DirectorDbStorage(new JdbcTemplate(), new DirectorRowMapper());
+    public static ReferenceDataCache referenceData = new ReferenceDataCache(genreStorage, mpaStorage, filmCache);
+    public static DirectorStorage directorStorage = new DirectorDbStorage(new JdbcTemplate(), new DirectorRowMapper(), batchLoader, filmCache,
+            new FilmSearchIndex(new JdbcTemplate(), false),
+            new SuggestionIndex(new JdbcTemplate(), false, 10, 1000, Duration.ofMinutes(5)));
     public static FilmStorage filmStorage = new InMemoryFilmStorage();
 
     public static FriendshipService friendshipService = new FriendshipService(friendshipStorage);
     public static FeedService feedService = new FeedService(feedStorage);
     public static UserService userService = new UserService(userStorage, friendshipService, feedService);
-    public static GenreService genreService = new GenreService(genreStorage);
-    public static MpaService mpaService = new MpaService(mpaStorage);
-    public static DirectorService directorService = new DirectorService(directorStorage);
-    public static FilmService filmService = new FilmService(filmStorage, userService, genreService, mpaService, directorService, feedService);
+    public static GenreService genreService = new GenreService(genreStorage, referenceData);
+    public static MpaService mpaService = new MpaService(referenceData);
+    public static DirectorService directorService = new DirectorService(directorStorage, new DirectorCache(1000));
+    public static FilmRecommendationService recommendationService = new FilmRecommendationService(filmStorage,
+            new RecommendationCache(1000), Duration.ofMinutes(10), Duration.ofMinutes(5), Duration.ofHours(1));
+    public static FilmService filmService = new FilmService(filmStorage, userService, genreService, mpaService, directorService, feedService, recommendationService);
 
-    public static FilmController filmController = new FilmController(filmService);
+    public static FilmController filmController = new FilmController(filmService, new ObjectMapper().findAndRegisterModules(), Duration.ofHours(1));
     private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
 
     @Test
@@ -87,6 +112,60 @@ public class FilmControllerTest {
         assertFalse(violations.isEmpty(), "Validation errors expected");
     }
 
+    @Test
+    public void testFilmPagesFollowNextCursorHeader() {
+        FilmStorage pagedStorage = new InMemoryFilmStorage();
+        FilmController pagedController = new FilmController(new FilmService(pagedStorage, userService, genreService,
+                mpaService, directorService, feedService, recommendationService), new ObjectMapper().findAndRegisterModules(),
+                Duration.ofHours(1));
+        for (String name : List.of("A", "B", "C")) {
+            pagedStorage.create(new Film(1L, name, new Mpa(), new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Collection<Film> page = pagedController.findAll(null, 2, response);
+        assertEquals(List.of("A", "B"), page.stream().map(Film::getName).toList());
+        String cursor = response.getHeader(PageCursor.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        MockHttpServletResponse nextResponse = new MockHttpServletResponse();
+        Collection<Film> nextPage = pagedController.findAll(cursor, 2, nextResponse);
+        assertEquals(List.of("C"), nextPage.stream().map(Film::getName).toList());
+        assertNull(nextResponse.getHeader(PageCursor.NEXT_CURSOR_HEADER));
+
+        assertThrows(ConditionsNotMetException.class, () -> pagedController.findAll(null, -1, new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void testExportWritesFilmWithLikesPerLine() throws Exception {
+        FilmStorage exportedStorage = new InMemoryFilmStorage();
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        FilmController exportController = new FilmController(new FilmService(exportedStorage, userService, genreService,
+                mpaService, directorService, feedService, recommendationService), objectMapper, Duration.ofMinutes(1));
+        Film liked = exportedStorage.create(new Film(1L, "A", new Mpa(), new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+        liked.addLike(1L);
+        liked.addLike(2L);
+        exportedStorage.create(new Film(1L, "B", new Mpa(), new HashSet<Genre>(), new HashSet<Director>(), "BBB", LocalDate.of(2024, 8, 3), 60, new HashSet<>()));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        WebAsyncTask<Void> task = exportController.export(response);
+        task.getCallable().call();
+
+        assertEquals(60_000L, task.getTimeout());
+        assertEquals("application/x-ndjson", response.getContentType());
+        List<String> lines = response.getContentAsString().lines().toList();
+        assertEquals(2, lines.size());
+        List<Long> likes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (String line : lines) {
+            ObjectNode node = (ObjectNode) objectMapper.readTree(line);
+            likes.add(node.remove("likes").asLong());
+            names.add(objectMapper.treeToValue(node, Film.class).getName());
+        }
+        assertEquals(List.of("A", "B"), names);
+        assertEquals(List.of(2L, 0L), likes);
+    }
+
     @Test
     public void testThrowsIfFilmEmpty() {
         Film film = new Film();
@@ -206,4 +206,20 @@ public class UserControllerTest {
         assertEquals(1, userController.getIntersectionOfFriends(createdUser1.getId(), createdUser2.getId()).size());
         assertTrue(userController.getIntersectionOfFriends(createdUser1.getId(), createdUser2.getId()).contains(createdUser3));
     }
+
+    @Test
+    public void testCountFriends() {
+        User user = userController.create(new User(1L, "counted@gmail.com", "counted", "counted", LocalDate.of(2024, 1, 1)));
+        User friend = userController.create(new User(1L, "counted2@gmail.com", "counted2", "counted2", LocalDate.of(2024, 1, 1)));
+        User otherFriend = userController.create(new User(1L, "counted3@gmail.com", "counted3", "counted3", LocalDate.of(2024, 1, 1)));
+        userController.addFriendToUser(user.getId(), friend.getId());
+        userController.addFriendToUser(user.getId(), otherFriend.getId());
+
+        assertEquals(2, userController.countUserFriends(user.getId()));
+        assertEquals(userController.getUserFriends(user.getId()).size(), userController.countUserFriends(user.getId()));
+
+        userController.deleteFriendInUser(user.getId(), friend.getId());
+
+        assertEquals(1, userController.countUserFriends(user.getId()));
+    }
 }